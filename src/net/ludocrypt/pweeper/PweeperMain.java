@@ -5,20 +5,27 @@ import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.GridLayout;
+import java.awt.Toolkit;
+import java.awt.datatransfer.StringSelection;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.awt.image.BufferedImage;
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
 
 import javax.imageio.ImageIO;
 import javax.swing.JButton;
+import javax.swing.JCheckBoxMenuItem;
+import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JMenu;
@@ -26,6 +33,7 @@ import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JSlider;
 import javax.swing.JTextField;
 import javax.swing.SwingUtilities;
 import javax.swing.text.AbstractDocument;
@@ -35,45 +43,56 @@ import javax.swing.text.DocumentFilter;
 
 import net.ludocrypt.pweeper.game.GameMouseController;
 import net.ludocrypt.pweeper.game.GamePermissions;
+import net.ludocrypt.pweeper.game.GameSnapshot;
 import net.ludocrypt.pweeper.game.GameState;
 import net.ludocrypt.pweeper.game.GameState.Int2;
 import net.ludocrypt.pweeper.game.MinesOnlyGame;
+import net.ludocrypt.pweeper.game.MoveJournal;
+import net.ludocrypt.pweeper.game.Preset;
+import net.ludocrypt.pweeper.game.ReplaySeeker;
+import net.ludocrypt.pweeper.render.BoardOverview;
+import net.ludocrypt.pweeper.render.RenderStats;
+import net.ludocrypt.pweeper.render.RenderThread;
+import net.ludocrypt.pweeper.render.Sprite;
+import net.ludocrypt.pweeper.render.SpriteAtlas;
+import net.ludocrypt.pweeper.render.TileCache;
 import net.ludocrypt.pweeper.render.Viewport;
 
 public class PweeperMain {
 	private JFrame frame;
-	private BufferedImage canvas;
+	private RenderThread renderThread;
+
+	// Only touched by the render thread, apart from the snapshot it waits on at the start of a frame
+	private GameState mirrored, mirror;
+	private Viewport frameViewport;
+	private TileCache tiles;
+	private BoardOverview overview;
 	private JPanel drawPanel;
+	private JPanel replayBar;
+
+	private boolean showStats = Boolean.getBoolean("pweeper.showStats");
 
-	public static GameState gameState = new GameState(10, 10, 10, 6);
+	public static GameState gameState = Preset.EASY.create();
 	public static Viewport viewport;
 	public static GameMouseController gameController;
 
+	// The board is cached as tiles, so this caps memory however large the board gets
+	public static final long TILE_CACHE_BYTES = Long.getLong("pweeper.tileCacheMB", 256) << 20;
+
+	// Below this many screen pixels per cell the board is drawn from the overview instead of sprites
+	public static final double OVERVIEW_CELL_PIXELS = 4;
+
+	public static final int MAX_FPS = Integer.getInteger("pweeper.maxFps", 60);
+
 	public static final Map<String, BufferedImage> SPRITES = new HashMap<>();
+	public static SpriteAtlas ATLAS;
 
 	public PweeperMain() {
 		frame = new JFrame("Pweeper Sweeper");
 		frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 		frame.setJMenuBar(createMenuBar());
 
-		try {
-			InputStream spriteList = ClassLoader.getSystemResourceAsStream("resources/sprites.lst");
-			if (spriteList != null) {
-				BufferedReader reader = new BufferedReader(new InputStreamReader(spriteList));
-				String line;
-				while ((line = reader.readLine()) != null) {
-					String name = line.trim().replace(".png", "");
-					InputStream imageStream = ClassLoader.getSystemResourceAsStream("resources/" + line.trim());
-					if (imageStream != null) {
-						SPRITES.put(name, ImageIO.read(imageStream));
-					}
-				}
-				reader.close();
-			}
-		} catch (Exception e) {
-			e.printStackTrace();
-			System.exit(0);
-		}
+		loadSprites();
 
 		drawPanel = new JPanel() {
 			private static final long serialVersionUID = -1455072995595976189L;
@@ -81,19 +100,20 @@ public class PweeperMain {
 			@Override
 			protected void paintComponent(Graphics g) {
 				super.paintComponent(g);
-				Graphics2D g2d = (Graphics2D) g;
-				gameState.draw(canvas, true);
+				renderThread.paint(g);
 
-				if (PweeperMain.viewport != null) {
-					PweeperMain.viewport.drawTransformedImage(g2d, canvas);
+				if (showStats) {
+					renderThread.getStats().drawOverlay((Graphics2D) g, 4, 4);
 				}
-
 			}
 		};
 
 		viewport = new Viewport(drawPanel);
+		renderThread = new RenderThread(drawPanel, MAX_FPS, this::snapshotFrame, this::paintFrame);
 
+		gameState.setJournal(new MoveJournal(gameState));
 		gameController = new GameMouseController(gameState, drawPanel, viewport);
+		gameController.setFrameScheduler(renderThread.getScheduler());
 
 		drawPanel.addMouseListener(gameController);
 		drawPanel.addMouseMotionListener(gameController);
@@ -116,11 +136,51 @@ public class PweeperMain {
 
 		});
 
+		// Stops the render thread before the window goes, whether it is closed or disposed
+		frame.addWindowListener(new WindowAdapter() {
+
+			@Override
+			public void windowClosing(WindowEvent e) {
+				renderThread.shutdown();
+			}
+
+			@Override
+			public void windowClosed(WindowEvent e) {
+				renderThread.shutdown();
+			}
+
+		});
+
 		updateCanvasSize();
 		centerWindow();
+	}
+
+	// Also used headless, by anything that draws a GameState offscreen
+	public static void loadSprites() {
+		if (!SPRITES.isEmpty()) {
+			return;
+		}
+
+		try {
+			InputStream spriteList = ClassLoader.getSystemResourceAsStream("resources/sprites.lst");
+			if (spriteList != null) {
+				BufferedReader reader = new BufferedReader(new InputStreamReader(spriteList));
+				String line;
+				while ((line = reader.readLine()) != null) {
+					String name = line.trim().replace(".png", "");
+					InputStream imageStream = ClassLoader.getSystemResourceAsStream("resources/" + line.trim());
+					if (imageStream != null) {
+						SPRITES.put(name, ImageIO.read(imageStream));
+					}
+				}
+				reader.close();
+			}
 
-		ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
-		scheduler.scheduleAtFixedRate(() -> drawPanel.repaint(), 0, 200, TimeUnit.MILLISECONDS);
+			ATLAS = new SpriteAtlas(SPRITES);
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.exit(0);
+		}
 	}
 
 	private JMenuBar createMenuBar() {
@@ -131,17 +191,47 @@ public class PweeperMain {
 		JMenuItem medium = new JMenuItem("Medium");
 		JMenuItem hard = new JMenuItem("Hard");
 		JMenuItem custom = new JMenuItem("Custom");
+		JMenuItem copySeed = new JMenuItem("Copy seed");
+		JMenuItem playSeed = new JMenuItem("Play seed...");
+		JMenuItem save = new JMenuItem("Save...");
+		JMenuItem open = new JMenuItem("Open...");
+		JMenuItem saveMoves = new JMenuItem("Save moves...");
+		JMenuItem replay = new JMenuItem("Replay moves...");
 //        custom.setEnabled(false);
 
-		easy.addActionListener(e -> setGameSize(10, 10, 10, 6));
-		medium.addActionListener(e -> setGameSize(16, 16, 40, 20));
-		hard.addActionListener(e -> setGameSize(24, 24, 99, 50));
+		easy.addActionListener(e -> setGameSize(Preset.EASY));
+		medium.addActionListener(e -> setGameSize(Preset.MEDIUM));
+		hard.addActionListener(e -> setGameSize(Preset.HARD));
 		custom.addActionListener(e -> openCustomDialog());
+		playSeed.addActionListener(e -> openSeedDialog());
+		save.addActionListener(e -> saveGame());
+		open.addActionListener(e -> openGame());
+		saveMoves.addActionListener(e -> saveMoves());
+		replay.addActionListener(e -> openReplay());
+		copySeed.addActionListener(e -> Toolkit.getDefaultToolkit().getSystemClipboard().setContents(new StringSelection(String.valueOf(gameState.getSeed())), null));
 
 		gameMenu.add(easy);
 		gameMenu.add(medium);
 		gameMenu.add(hard);
 		gameMenu.add(custom);
+		gameMenu.addSeparator();
+		gameMenu.add(copySeed);
+		gameMenu.add(playSeed);
+		gameMenu.addSeparator();
+		gameMenu.add(save);
+		gameMenu.add(open);
+		gameMenu.add(saveMoves);
+		gameMenu.add(replay);
+
+		JMenu viewMenu = new JMenu("View");
+
+		JCheckBoxMenuItem stats = new JCheckBoxMenuItem("Performance overlay", showStats);
+		stats.addActionListener(e -> {
+			showStats = stats.isSelected();
+			drawPanel.repaint();
+		});
+
+		viewMenu.add(stats);
 
 		JMenu helpMenu = new JMenu("Help");
 
@@ -151,19 +241,36 @@ public class PweeperMain {
 		helpMenu.add(howto);
 
 		menuBar.add(gameMenu);
+		menuBar.add(viewMenu);
 		menuBar.add(helpMenu);
 
 		return menuBar;
 	}
 
+	private void setGameSize(Preset preset) {
+		setGameSize(preset.width(), preset.height(), preset.mines(), preset.portals());
+	}
+
 	private void setGameSize(int width, int height, int mines, int portals) {
-		gameState = new GameState(width, height, mines, portals);
+		setGameSize(new GameState(width, height, mines, portals));
+	}
+
+	private void setGameSize(GameState game) {
+		game.setJournal(new MoveJournal(game));
+		showGame(game);
+	}
+
+	// Swaps the game that is drawn and played, closing any replay
+	private void showGame(GameState game) {
+		gameState = game;
+		setReplayBar(null);
 
 		drawPanel.removeMouseListener(gameController);
 		drawPanel.removeMouseMotionListener(gameController);
 		drawPanel.removeMouseWheelListener(gameController);
 
 		gameController = new GameMouseController(gameState, drawPanel, viewport);
+		gameController.setFrameScheduler(renderThread.getScheduler());
 
 		drawPanel.addMouseListener(gameController);
 		drawPanel.addMouseMotionListener(gameController);
@@ -173,24 +280,195 @@ public class PweeperMain {
 	}
 
 	private void updateCanvasSize() {
-		canvas = new BufferedImage(gameState.getWidth() * 20 + 20, gameState.getHeight() * 20 + 80, BufferedImage.TYPE_INT_ARGB);
-		frame.repaint();
+		renderThread.getScheduler().requestFrame();
+	}
+
+	// On the EDT, with the render thread waiting: copies what the next frame is drawn from
+	private void snapshotFrame() {
+		if (mirrored != gameState) {
+			mirrored = gameState;
+			mirror = new GameState(gameState);
+			tiles = new TileCache(gameState.getWidth() * 20 + 20, gameState.getHeight() * 20 + 80, TILE_CACHE_BYTES, (g, x, y, w, h) -> mirror.drawRegion(g, x, y, w, h, true));
+			overview = new BoardOverview(gameState.getWidth(), gameState.getHeight());
+		}
+
+		gameState.syncTo(mirror);
+		frameViewport = viewport.snapshot();
+
+		long tick = gameState.getMillisUntilTick();
+
+		if (tick >= 0) {
+			renderThread.getScheduler().requestFrame(tick);
+		}
+	}
+
+	// On the render thread. Tiles rendered on a miss are timed by the cache and taken out of the
+	// composite pass, so the two can be told apart.
+	private void paintFrame(Graphics2D g, int width, int height) {
+		long cells = mirror.getCellsDrawn();
+		long sprites = mirror.getSpritesDrawn();
+		int rendered = tiles.getRendered();
+		long renderNanos = tiles.getRenderNanos();
+		int drawn = 0;
+
+		long start = System.nanoTime();
+		long updated;
+
+		if (frameViewport.getScale() * 20 < OVERVIEW_CELL_PIXELS) {
+			mirror.draw(overview);
+			updated = System.nanoTime();
+			frameViewport.drawTransformedOverview(g, overview, 10, 70, tiles.getWidth(), tiles.getHeight());
+		} else {
+			mirror.draw(tiles, true);
+			updated = System.nanoTime();
+			drawn = frameViewport.drawTransformedTiles(g, tiles);
+		}
+
+		long tileNanos = tiles.getRenderNanos() - renderNanos;
+
+		RenderStats stats = renderThread.getStats();
+		stats.add(RenderStats.Pass.UPDATE, updated - start);
+		stats.add(RenderStats.Pass.TILES, tileNanos);
+		stats.add(RenderStats.Pass.COMPOSITE, System.nanoTime() - updated - tileNanos);
+		stats.count(mirror.getCellsDrawn() - cells, mirror.getSpritesDrawn() - sprites, tiles.getRendered() - rendered, drawn);
 	}
 
 	private void centerWindow() {
 		frame.setLocationRelativeTo(null);
 	}
 
+	private void saveGame() {
+		JFileChooser chooser = new JFileChooser();
+
+		if (chooser.showSaveDialog(frame) == JFileChooser.APPROVE_OPTION) {
+			try {
+				GameSnapshot.save(gameState, chooser.getSelectedFile().toPath());
+			} catch (IOException e) {
+				JOptionPane.showMessageDialog(frame, "Could not save the game: " + e.getMessage(), "Save", JOptionPane.ERROR_MESSAGE);
+			}
+		}
+	}
+
+	// Replays without the window, through ReplayBenchmarks or MoveJournal.replay
+	private void saveMoves() {
+		// Replays are not recorded again
+		if (gameState.getJournal() == null) {
+			return;
+		}
+
+		JFileChooser chooser = new JFileChooser();
+
+		if (chooser.showSaveDialog(frame) == JFileChooser.APPROVE_OPTION) {
+			try (FileChannel channel = FileChannel.open(chooser.getSelectedFile().toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+				gameState.getJournal().write(channel);
+			} catch (IOException e) {
+				JOptionPane.showMessageDialog(frame, "Could not save the moves: " + e.getMessage(), "Save Moves", JOptionPane.ERROR_MESSAGE);
+			}
+		}
+	}
+
+	// Scrubs through a saved journal on a board that cannot be played, drawn like any other game.
+	// The board can still be panned and zoomed.
+	private void openReplay() {
+		JFileChooser chooser = new JFileChooser();
+
+		if (chooser.showOpenDialog(frame) != JFileChooser.APPROVE_OPTION) {
+			return;
+		}
+
+		ReplaySeeker seeker;
+
+		// A snapshot inside the journal is only read in full once the seeker makes the game
+		try (FileChannel channel = FileChannel.open(chooser.getSelectedFile().toPath(), StandardOpenOption.READ)) {
+			seeker = new ReplaySeeker(MoveJournal.read(channel));
+		} catch (IOException | UncheckedIOException e) {
+			JOptionPane.showMessageDialog(frame, "Could not open the moves: " + e.getMessage(), "Replay Moves", JOptionPane.ERROR_MESSAGE);
+			return;
+		}
+
+		seeker.seek(0);
+
+		GameState game = seeker.getGame();
+		game.permissions = 0;
+		showGame(game);
+
+		JSlider slider = new JSlider(0, seeker.getMoves(), 0);
+		JLabel label = new JLabel(getReplayText(seeker));
+
+		slider.addChangeListener(e -> {
+			seeker.seek(slider.getValue());
+			label.setText(getReplayText(seeker));
+			renderThread.getScheduler().requestFrame();
+		});
+
+		JPanel bar = new JPanel(new BorderLayout(8, 0));
+		bar.add(slider, BorderLayout.CENTER);
+		bar.add(label, BorderLayout.EAST);
+
+		setReplayBar(bar);
+		slider.requestFocusInWindow();
+	}
+
+	private static String getReplayText(ReplaySeeker seeker) {
+		long seconds = seeker.getMicros() / 1000000;
+		return String.format("Move %d of %d  %d:%02d ", seeker.getMove(), seeker.getMoves(), seconds / 60, seconds % 60);
+	}
+
+	private void setReplayBar(JPanel bar) {
+		if (replayBar != null) {
+			frame.remove(replayBar);
+		}
+
+		replayBar = bar;
+
+		if (bar != null) {
+			frame.add(bar, BorderLayout.SOUTH);
+		}
+
+		frame.revalidate();
+	}
+
+	private void openGame() {
+		JFileChooser chooser = new JFileChooser();
+
+		if (chooser.showOpenDialog(frame) == JFileChooser.APPROVE_OPTION) {
+			try {
+				setGameSize(GameSnapshot.load(chooser.getSelectedFile().toPath()));
+			} catch (IOException e) {
+				JOptionPane.showMessageDialog(frame, "Could not open the game: " + e.getMessage(), "Open", JOptionPane.ERROR_MESSAGE);
+			}
+		}
+	}
+
+	// Deals the board a seed gives at the current size, which is the same board as when it was copied
+	private void openSeedDialog() {
+		Object input = JOptionPane.showInputDialog(frame, "Seed:", "Play Seed", JOptionPane.PLAIN_MESSAGE, null, null, String.valueOf(gameState.getSeed()));
+
+		if (input != null) {
+			try {
+				long seed = Long.parseLong(input.toString().trim());
+				setGameSize(new GameState(gameState.getWidth(), gameState.getHeight(), gameState.getMines(), gameState.getPortals(), gameState.getPermissions(), seed));
+			} catch (NumberFormatException e) {
+				JOptionPane.showMessageDialog(frame, "The seed has to be a whole number.", "Play Seed", JOptionPane.ERROR_MESSAGE);
+			}
+		}
+	}
+
 	private void openCustomDialog() {
 		JTextField widthField = new JTextField(String.valueOf(gameState.getWidth()));
 		JTextField heightField = new JTextField(String.valueOf(gameState.getHeight()));
 
+		JTextField seedField = new JTextField();
+		seedField.setToolTipText("Leave empty for a random board");
+
 		JPanel panel = new JPanel(new GridLayout(4, 2));
 
 		panel.add(new JLabel("Width:"));
 		panel.add(widthField);
 		panel.add(new JLabel("Height:"));
 		panel.add(heightField);
+		panel.add(new JLabel("Seed:"));
+		panel.add(seedField);
 
 		DocumentFilter numberFilter = new DocumentFilter() {
 			@Override
@@ -220,7 +498,26 @@ public class PweeperMain {
 			double mineDensity = 0.188662 - 8.81325 / (w * h);
 			double portalDensity = 0.091585 - 3.18523 / (w * h);
 
-			setGameSize(w, h, (int) (mineDensity * (double) w * (double) h), (int) (portalDensity * (double) w * (double) h));
+			// Small boards fall below the regression, and nothing can be placed on an empty one
+			if (w < 1 || h < 1) {
+				JOptionPane.showMessageDialog(frame, "The board needs at least one cell.", "Custom Game", JOptionPane.ERROR_MESSAGE);
+				return;
+			}
+
+			int mines = Math.max(0, Math.min((int) (mineDensity * (double) w * (double) h), GameState.getMaxMines(w, h)));
+			int portals = Math.max(0, (int) (portalDensity * (double) w * (double) h));
+
+			String seed = seedField.getText().trim();
+
+			if (seed.isEmpty()) {
+				setGameSize(w, h, mines, portals);
+			} else {
+				try {
+					setGameSize(new GameState(w, h, mines, portals, GamePermissions.FULL, Long.parseLong(seed)));
+				} catch (NumberFormatException e) {
+					JOptionPane.showMessageDialog(frame, "The seed has to be a whole number.", "Custom Game", JOptionPane.ERROR_MESSAGE);
+				}
+			}
 		}
 	}
 
@@ -312,18 +609,18 @@ public class PweeperMain {
 				games[0] = new MinesOnlyGame(7, 3);
 				games[1] = new MinesOnlyGame(3, 3);
 
-				games[0].mineGrid[2][0] = true;
-				games[0].mineGrid[3][0] = true;
-				games[0].mineGrid[4][0] = true;
+				games[0].setMine(2, 0, true);
+				games[0].setMine(3, 0, true);
+				games[0].setMine(4, 0, true);
 
-				games[1].mineGrid[0][0] = true;
-				games[1].mineGrid[0][1] = true;
-				games[1].mineGrid[0][2] = true;
-				games[1].mineGrid[1][0] = true;
-				games[1].mineGrid[1][2] = true;
-				games[1].mineGrid[2][0] = true;
-				games[1].mineGrid[2][1] = true;
-				games[1].mineGrid[2][2] = true;
+				games[1].setMine(0, 0, true);
+				games[1].setMine(0, 1, true);
+				games[1].setMine(0, 2, true);
+				games[1].setMine(1, 0, true);
+				games[1].setMine(1, 2, true);
+				games[1].setMine(2, 0, true);
+				games[1].setMine(2, 1, true);
+				games[1].setMine(2, 2, true);
 
 				adapters[0] = new GameMouseController(games[0], contentPanel, false, new Int2(7, 98), new Int2(7 * 20, 3 * 20), new Viewport(drawPanel, true));
 				adapters[1] = new GameMouseController(games[1], contentPanel, false, new Int2(167, 10), new Int2(3 * 20, 3 * 20), new Viewport(drawPanel, true));
@@ -333,27 +630,27 @@ public class PweeperMain {
 			} else if (slide == 2) {
 				games[0] = new GameState(6, 4, 0, 0, GamePermissions.create(GamePermissions.FLAG));
 
-				games[0].mineGrid[2][1] = true;
-				games[0].mineGrid[4][2] = true;
-				games[0].mineGrid[2][3] = true;
-
-				games[0].flagged[2][1] = true;
-
-				games[0].revealed[0][0] = true;
-				games[0].revealed[1][0] = true;
-				games[0].revealed[2][0] = true;
-				games[0].revealed[3][0] = true;
-				games[0].revealed[4][0] = true;
-				games[0].revealed[5][0] = true;
-				games[0].revealed[0][1] = true;
-				games[0].revealed[1][1] = true;
-				games[0].revealed[3][1] = true;
-				games[0].revealed[4][1] = true;
-				games[0].revealed[5][1] = true;
-				games[0].revealed[0][2] = true;
-				games[0].revealed[1][2] = true;
-				games[0].revealed[0][3] = true;
-				games[0].revealed[1][3] = true;
+				games[0].setMine(2, 1, true);
+				games[0].setMine(4, 2, true);
+				games[0].setMine(2, 3, true);
+
+				games[0].setFlagged(2, 1, true);
+
+				games[0].setRevealed(0, 0, true);
+				games[0].setRevealed(1, 0, true);
+				games[0].setRevealed(2, 0, true);
+				games[0].setRevealed(3, 0, true);
+				games[0].setRevealed(4, 0, true);
+				games[0].setRevealed(5, 0, true);
+				games[0].setRevealed(0, 1, true);
+				games[0].setRevealed(1, 1, true);
+				games[0].setRevealed(3, 1, true);
+				games[0].setRevealed(4, 1, true);
+				games[0].setRevealed(5, 1, true);
+				games[0].setRevealed(0, 2, true);
+				games[0].setRevealed(1, 2, true);
+				games[0].setRevealed(0, 3, true);
+				games[0].setRevealed(1, 3, true);
 
 				adapters[0] = new GameMouseController(games[0], contentPanel, false, new Int2(8, 77), new Int2(6 * 20, 4 * 20), new Viewport(drawPanel, true));
 
@@ -363,16 +660,16 @@ public class PweeperMain {
 
 				games[0].officiallyStarted = true;
 
-				games[0].mineGrid[0][0] = true;
+				games[0].setMine(0, 0, true);
 
-				games[0].flagged[0][0] = true;
+				games[0].setFlagged(0, 0, true);
 
-				games[0].revealed[0][1] = true;
-				games[0].revealed[1][1] = true;
-				games[0].revealed[2][1] = true;
-				games[0].revealed[0][2] = true;
-				games[0].revealed[1][2] = true;
-				games[0].revealed[2][2] = true;
+				games[0].setRevealed(0, 1, true);
+				games[0].setRevealed(1, 1, true);
+				games[0].setRevealed(2, 1, true);
+				games[0].setRevealed(0, 2, true);
+				games[0].setRevealed(1, 2, true);
+				games[0].setRevealed(2, 2, true);
 
 				adapters[0] = new GameMouseController(games[0], contentPanel, false, new Int2(8, 98), new Int2(3 * 20, 3 * 20), new Viewport(drawPanel, true));
 
@@ -380,22 +677,15 @@ public class PweeperMain {
 			} else if (slide == 4) {
 				games[0] = new GameState(5, 4, 0, 0, GamePermissions.create(GamePermissions.REVEAL)) {
 
-					public void drawCells(Graphics2D g, boolean realGame) {
-						for (int x = 0; x < getWidth(); x++) {
-							for (int y = 0; y < getHeight(); y++) {
-								int dx = x * 20 + (realGame ? 10 : 0);
-								int dy = y * 20 + (realGame ? 70 : 0);
-
-								if (isRevealed(x, y)) {
-									g.drawImage(PweeperMain.SPRITES.get("CellRevealed"), dx, dy, null);
-								} else {
-									g.drawImage(PweeperMain.SPRITES.get("Cell"), dx, dy, null);
-
-									if (gameLive) {
-										if (x == 1 && y == 2) {
-											g.drawImage(PweeperMain.SPRITES.get("Question"), dx, dy, null);
-										}
-									}
+					public void drawCell(Graphics2D g, int x, int y, int dx, int dy) {
+						if (isRevealed(x, y)) {
+							g.drawImage(PweeperMain.ATLAS.get(Sprite.CELL_REVEALED), dx, dy, null);
+						} else {
+							g.drawImage(PweeperMain.ATLAS.get(Sprite.CELL), dx, dy, null);
+
+							if (gameLive) {
+								if (x == 1 && y == 2) {
+									g.drawImage(PweeperMain.ATLAS.get(Sprite.QUESTION), dx, dy, null);
 								}
 							}
 						}
@@ -405,55 +695,55 @@ public class PweeperMain {
 
 				games[0].officiallyStarted = true;
 
-				games[0].mineGrid[0][2] = true;
-				games[0].mineGrid[1][3] = true;
-				games[0].mineGrid[3][3] = true;
-				games[0].mineGrid[4][3] = true;
-
-				games[0].revealed[0][0] = true;
-				games[0].revealed[1][0] = true;
-				games[0].revealed[2][0] = true;
-				games[0].revealed[3][0] = true;
-				games[0].revealed[4][0] = true;
-				games[0].revealed[0][1] = true;
-				games[0].revealed[1][1] = true;
-				games[0].revealed[2][1] = true;
-				games[0].revealed[3][1] = true;
-				games[0].revealed[4][1] = true;
-				games[0].revealed[2][2] = true;
-				games[0].revealed[3][2] = true;
-				games[0].revealed[4][2] = true;
-
-				games[0].portalsMap.put(new Int2(1, 2), new Int2(0, 3));
+				games[0].setMine(0, 2, true);
+				games[0].setMine(1, 3, true);
+				games[0].setMine(3, 3, true);
+				games[0].setMine(4, 3, true);
+
+				games[0].setRevealed(0, 0, true);
+				games[0].setRevealed(1, 0, true);
+				games[0].setRevealed(2, 0, true);
+				games[0].setRevealed(3, 0, true);
+				games[0].setRevealed(4, 0, true);
+				games[0].setRevealed(0, 1, true);
+				games[0].setRevealed(1, 1, true);
+				games[0].setRevealed(2, 1, true);
+				games[0].setRevealed(3, 1, true);
+				games[0].setRevealed(4, 1, true);
+				games[0].setRevealed(2, 2, true);
+				games[0].setRevealed(3, 2, true);
+				games[0].setRevealed(4, 2, true);
+
+				games[0].addPortal(1, 2, 0, 3);
 
 				games[1] = new GameState(3, 6, 0, 0, GamePermissions.create(GamePermissions.REVEAL, GamePermissions.FLAG, GamePermissions.AUTO_REVEAL));
 
 				games[1].officiallyStarted = true;
 
-				games[1].mineGrid[0][1] = true;
-				games[1].mineGrid[0][4] = true;
-				games[1].mineGrid[1][4] = true;
-
-				games[1].flagged[0][1] = true;
-				games[1].flagged[0][4] = true;
-				games[1].flagged[1][4] = true;
-
-				games[1].revealed[0][0] = true;
-				games[1].revealed[1][0] = true;
-				games[1].revealed[2][0] = true;
-				games[1].revealed[1][1] = true;
-				games[1].revealed[2][1] = true;
-				games[1].revealed[0][2] = true;
-				games[1].revealed[1][2] = true;
-				games[1].revealed[2][2] = true;
-				games[1].revealed[0][3] = true;
-				games[1].revealed[1][3] = true;
-				games[1].revealed[2][3] = true;
-				games[1].revealed[0][5] = true;
-				games[1].revealed[1][5] = true;
-				games[1].revealed[2][5] = true;
-
-				games[1].portalsMap.put(new Int2(2, 1), new Int2(0, 3));
+				games[1].setMine(0, 1, true);
+				games[1].setMine(0, 4, true);
+				games[1].setMine(1, 4, true);
+
+				games[1].setFlagged(0, 1, true);
+				games[1].setFlagged(0, 4, true);
+				games[1].setFlagged(1, 4, true);
+
+				games[1].setRevealed(0, 0, true);
+				games[1].setRevealed(1, 0, true);
+				games[1].setRevealed(2, 0, true);
+				games[1].setRevealed(1, 1, true);
+				games[1].setRevealed(2, 1, true);
+				games[1].setRevealed(0, 2, true);
+				games[1].setRevealed(1, 2, true);
+				games[1].setRevealed(2, 2, true);
+				games[1].setRevealed(0, 3, true);
+				games[1].setRevealed(1, 3, true);
+				games[1].setRevealed(2, 3, true);
+				games[1].setRevealed(0, 5, true);
+				games[1].setRevealed(1, 5, true);
+				games[1].setRevealed(2, 5, true);
+
+				games[1].addPortal(2, 1, 0, 3);
 
 				adapters[0] = new GameMouseController(games[0], contentPanel, false, new Int2(8, 77), new Int2(5 * 20, 4 * 20), new Viewport(drawPanel, true));
 				adapters[1] = new GameMouseController(games[1], contentPanel, false, new Int2(233, 7), new Int2(3 * 20, 6 * 20), new Viewport(drawPanel, true));
@@ -465,26 +755,26 @@ public class PweeperMain {
 
 				games[0].officiallyStarted = true;
 
-				games[0].mineGrid[0][0] = true;
-				games[0].mineGrid[0][1] = true;
+				games[0].setMine(0, 0, true);
+				games[0].setMine(0, 1, true);
 
-				games[0].flagged[0][0] = true;
-				games[0].flagged[0][1] = true;
+				games[0].setFlagged(0, 0, true);
+				games[0].setFlagged(0, 1, true);
 
-				games[0].revealed[2][0] = true;
-				games[0].revealed[1][1] = true;
-				games[0].revealed[2][1] = true;
-				games[0].revealed[3][1] = true;
-				games[0].revealed[0][2] = true;
-				games[0].revealed[1][2] = true;
-				games[0].revealed[2][2] = true;
-				games[0].revealed[3][2] = true;
-				games[0].revealed[0][3] = true;
-				games[0].revealed[1][3] = true;
-				games[0].revealed[2][3] = true;
-				games[0].revealed[3][3] = true;
+				games[0].setRevealed(2, 0, true);
+				games[0].setRevealed(1, 1, true);
+				games[0].setRevealed(2, 1, true);
+				games[0].setRevealed(3, 1, true);
+				games[0].setRevealed(0, 2, true);
+				games[0].setRevealed(1, 2, true);
+				games[0].setRevealed(2, 2, true);
+				games[0].setRevealed(3, 2, true);
+				games[0].setRevealed(0, 3, true);
+				games[0].setRevealed(1, 3, true);
+				games[0].setRevealed(2, 3, true);
+				games[0].setRevealed(3, 3, true);
 
-				games[0].portalsMap.put(new Int2(1, 0), new Int2(1, 3));
+				games[0].addPortal(1, 0, 1, 3);
 
 				adapters[0] = new GameMouseController(games[0], contentPanel, false, new Int2(7, 78), new Int2(4 * 20, 4 * 20), new Viewport(drawPanel, true));
 
@@ -494,27 +784,27 @@ public class PweeperMain {
 
 				games[0].officiallyStarted = true;
 
-				games[0].mineGrid[1][0] = true;
-				games[0].mineGrid[1][1] = true;
-				games[0].mineGrid[3][1] = true;
-				games[0].mineGrid[4][1] = true;
-
-				games[0].flagged[1][0] = true;
-				games[0].flagged[1][1] = true;
-				games[0].flagged[3][1] = true;
-				games[0].flagged[4][1] = true;
-
-				games[0].revealed[0][0] = true;
-				games[0].revealed[2][0] = true;
-				games[0].revealed[3][0] = true;
-				games[0].revealed[4][0] = true;
-				games[0].revealed[0][1] = true;
-				games[0].revealed[2][1] = true;
-				games[0].revealed[0][2] = true;
-				games[0].revealed[1][2] = true;
-				games[0].revealed[2][2] = true;
-				games[0].revealed[3][2] = true;
-				games[0].revealed[4][2] = true;
+				games[0].setMine(1, 0, true);
+				games[0].setMine(1, 1, true);
+				games[0].setMine(3, 1, true);
+				games[0].setMine(4, 1, true);
+
+				games[0].setFlagged(1, 0, true);
+				games[0].setFlagged(1, 1, true);
+				games[0].setFlagged(3, 1, true);
+				games[0].setFlagged(4, 1, true);
+
+				games[0].setRevealed(0, 0, true);
+				games[0].setRevealed(2, 0, true);
+				games[0].setRevealed(3, 0, true);
+				games[0].setRevealed(4, 0, true);
+				games[0].setRevealed(0, 1, true);
+				games[0].setRevealed(2, 1, true);
+				games[0].setRevealed(0, 2, true);
+				games[0].setRevealed(1, 2, true);
+				games[0].setRevealed(2, 2, true);
+				games[0].setRevealed(3, 2, true);
+				games[0].setRevealed(4, 2, true);
 
 				adapters[0] = new GameMouseController(games[0], contentPanel, false, new Int2(8, 97), new Int2(5 * 20, 3 * 20), new Viewport(drawPanel, true));
 
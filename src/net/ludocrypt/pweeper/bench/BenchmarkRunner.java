@@ -0,0 +1,66 @@
+package net.ludocrypt.pweeper.bench;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+import com.sun.management.ThreadMXBean;
+
+// Average time and allocation per operation, measured on the calling thread. Setup runs
+// outside the timed region, and every result is folded into a sink so the work cannot be
+// optimised away.
+public class BenchmarkRunner {
+	private static final int MIN_OPS = 5;
+
+	private final long warmup, measure;
+	private final ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	private long sink;
+
+	public BenchmarkRunner(long warmupMillis, long measureMillis) {
+		this.warmup = warmupMillis * 1000000L;
+		this.measure = measureMillis * 1000000L;
+	}
+
+	public <S> Result run(String name, String size, Supplier<S> setup, ToLongFunction<S> op) {
+		long end = System.nanoTime() + warmup;
+
+		while (System.nanoTime() < end) {
+			sink += op.applyAsLong(setup.get());
+		}
+
+		long time = 0, allocated = 0;
+		int ops = 0;
+
+		while (time < measure || ops < MIN_OPS) {
+			S state = setup.get();
+
+			long bytes = threads.getCurrentThreadAllocatedBytes();
+			long start = System.nanoTime();
+
+			sink += op.applyAsLong(state);
+
+			time += System.nanoTime() - start;
+			allocated += threads.getCurrentThreadAllocatedBytes() - bytes;
+			ops++;
+		}
+
+		return new Result(name, size, ops, (double) time / ops, (double) allocated / ops);
+	}
+
+	public long getSink() {
+		return sink;
+	}
+
+	public static record Result(String name, String size, int ops, double nanosPerOp, double bytesPerOp) {
+		public static String header() {
+			return String.format("%-28s %-10s %8s %14s %14s", "Benchmark", "Size", "Ops", "us/op", "B/op");
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%-28s %-10s %8d %14.3f %14.1f", name, size, ops, nanosPerOp / 1000, bytesPerOp);
+		}
+	}
+
+}
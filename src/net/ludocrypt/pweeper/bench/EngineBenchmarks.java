@@ -0,0 +1,241 @@
+package net.ludocrypt.pweeper.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import net.ludocrypt.pweeper.game.GamePermissions;
+import net.ludocrypt.pweeper.game.GameSnapshot;
+import net.ludocrypt.pweeper.game.GameSolver;
+import net.ludocrypt.pweeper.game.GameState;
+import net.ludocrypt.pweeper.game.Preset;
+
+// Arguments: [warmup ms] [measure ms] [name filter]
+public class EngineBenchmarks {
+	public static final Preset LARGE = new Preset("Large", 200, 200, 6900, 3470);
+	public static final List<Preset> SIZES = List.of(Preset.EASY, Preset.MEDIUM, Preset.HARD, LARGE);
+	public static final Preset MILLION = new Preset("Million", 1000, 1000, 188653, 91582);
+
+	// Every board the benchmarks build comes from it, so runs can be compared
+	public static final long SEED = 1;
+
+	public static void main(String[] args) {
+		BenchmarkRunner runner = new BenchmarkRunner(args.length > 0 ? Long.parseLong(args[0]) : 500, args.length > 1 ? Long.parseLong(args[1]) : 1000);
+		String filter = args.length > 2 ? args[2] : "";
+
+		System.out.println(BenchmarkRunner.Result.header());
+
+		for (Preset size : SIZES) {
+			if ("reveal.opening".contains(filter)) {
+				System.out.println(runner.run("reveal.opening", size.name(), () -> opening(size), game -> game.reveal(game.getWidth() / 2, game.getHeight() / 2)));
+			}
+
+			if ("surrounding.portals".contains(filter)) {
+				GameState game = size.create(SEED);
+				System.out.println(runner.run("surrounding.portals", size.name(), () -> game, EngineBenchmarks::sumSurrounding));
+			}
+
+			if ("surrounding.plain".contains(filter)) {
+				GameState game = new GameState(size.width(), size.height(), size.mines(), 0, GamePermissions.FULL, SEED);
+				System.out.println(runner.run("surrounding.plain", size.name(), () -> game, EngineBenchmarks::sumSurrounding));
+			}
+
+			for (int percent : new int[] { 10, 20, 30 }) {
+				String name = "placeMines." + percent + "%";
+
+				if (name.contains(filter)) {
+					GameState game = new GameState(size.width(), size.height(), size.width() * size.height() * percent / 100, size.portals(), GamePermissions.FULL, SEED);
+					System.out.println(runner.run(name, size.name(), () -> game, g -> {
+						g.resetGame();
+						return g.getPortalIndex().size();
+					}));
+				}
+			}
+
+			if ("firstClick.regenerate".contains(filter)) {
+				System.out.println(runner.run("firstClick.regenerate", size.name(), () -> firstClickOnMine(size), click -> click.game().reveal(click.x(), click.y())));
+			}
+
+			if ("solver.invalidCells".contains(filter)) {
+				GameState game = midGame(size, SEED);
+				GameSolver solver = new GameSolver(game);
+				System.out.println(runner.run("solver.invalidCells", size.name(), () -> solver, s -> s.getInvalidCells().size()));
+			}
+		}
+
+		// One opening over 16 million cells, deep enough to overflow the stack if the cascade
+		// ever went back to recursing
+		if ("reveal.stress".contains(filter)) {
+			System.out.println(runner.run("reveal.stress", "4000x4000", () -> empty(4000, 4000), EngineBenchmarks::revealAll));
+		}
+
+		// Sequential against the fork/join mode at each pool size. Allocation is only counted on
+		// the calling thread, so it reads low with a pool.
+		if ("solver.solve".contains(filter)) {
+			GameState game = safeReveals(LARGE, SEED, 600);
+			GameSolver sequential = new GameSolver(game);
+			System.out.println(runner.run("solver.solve", LARGE.name() + "/seq", () -> sequential, EngineBenchmarks::solve));
+
+			for (int threads : new int[] { 1, 2, 4, 8 }) {
+				ForkJoinPool pool = new ForkJoinPool(threads);
+				GameSolver solver = new GameSolver(game, pool);
+				System.out.println(runner.run("solver.solve", LARGE.name() + "/" + threads + "t", () -> solver, EngineBenchmarks::solve));
+				pool.shutdown();
+			}
+		}
+
+		for (Preset size : List.of(Preset.HARD, LARGE, MILLION)) {
+			if (!"snapshot.write".contains(filter) && !"snapshot.read".contains(filter)) {
+				break;
+			}
+
+			GameState game = midGame(size, SEED);
+			byte[] saved = snapshot(game);
+
+			if ("snapshot.write".contains(filter)) {
+				System.out.println(runner.run("snapshot.write", size.name(), () -> game, g -> snapshot(g).length));
+			}
+
+			if ("snapshot.read".contains(filter)) {
+				System.out.println(runner.run("snapshot.read", size.name(), () -> saved, bytes -> restore(bytes).getTotalRevealed()));
+			}
+		}
+
+		System.out.println("sink " + runner.getSink());
+	}
+
+	static long sumSurrounding(GameState game) {
+		long sum = 0;
+
+		for (int x = 0; x < game.getWidth(); x++) {
+			for (int y = 0; y < game.getHeight(); y++) {
+				sum += game.getSurrounding(x, y);
+			}
+		}
+
+		return sum;
+	}
+
+	static long solve(GameSolver solver) {
+		solver.solve();
+		return Double.doubleToLongBits(solver.getProbability(0, 0));
+	}
+
+	static byte[] snapshot(GameState game) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		try {
+			GameSnapshot.write(game, Channels.newChannel(bytes));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		return bytes.toByteArray();
+	}
+
+	static GameState restore(byte[] bytes) {
+		try {
+			return GameSnapshot.read(Channels.newChannel(new ByteArrayInputStream(bytes)));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// A sparse board already past its first click, so the timed reveal is only the cascade
+	static GameState opening(Preset size) {
+		GameState game = new GameState(size.width(), size.height(), size.width() * size.height() / 40, 0, GamePermissions.FULL, SEED);
+		game.officiallyStarted = true;
+
+		for (int x = 0; x < size.width(); x++) {
+			for (int y = 0; y < size.height(); y++) {
+				if (game.isMine(x, y)) {
+					game.setMine(x, y, false);
+				}
+			}
+		}
+
+		return game;
+	}
+
+	// A board with no mines or portals, already past its first click, so one reveal opens it all
+	static GameState empty(int width, int height) {
+		GameState game = new GameState(width, height, 0, 0, GamePermissions.FULL, SEED);
+		game.officiallyStarted = true;
+		return game;
+	}
+
+	static long revealAll(GameState game) {
+		game.reveal(0, 0);
+
+		if (game.getTotalRevealed() != game.getWidth() * game.getHeight()) {
+			throw new IllegalStateException("Opening stopped after " + game.getTotalRevealed() + " cells");
+		}
+
+		return game.getTotalRevealed();
+	}
+
+	// A fresh board and one of its mines, so the first click has to regenerate
+	static FirstClick firstClickOnMine(Preset size) {
+		GameState game = size.create(SEED);
+
+		for (int x = 0; x < size.width(); x++) {
+			for (int y = 0; y < size.height(); y++) {
+				if (game.isMine(x, y)) {
+					return new FirstClick(game, x, y);
+				}
+			}
+		}
+
+		return new FirstClick(game, 0, 0);
+	}
+
+	// A board opened at the centre plus random safe cells, with nothing flagged, so the solver
+	// has many independent frontier components of a size it can finish
+	static GameState safeReveals(Preset size, long seed, int reveals) {
+		Random random = new Random(seed);
+		GameState game = size.create(seed);
+		game.reveal(size.width() / 2, size.height() / 2);
+
+		for (int i = 0; i < reveals; i++) {
+			int x = random.nextInt(size.width());
+			int y = random.nextInt(size.height());
+
+			if (!game.isMine(x, y)) {
+				game.reveal(x, y);
+			}
+		}
+
+		return game;
+	}
+
+	static record FirstClick(GameState game, int x, int y) {
+	}
+
+	// A board opened at the centre with a share of the safe cells revealed and the mines
+	// next to them flagged. The seed deals the board and picks the cells, so it is the same
+	// game every run.
+	static GameState midGame(Preset size, long seed) {
+		Random random = new Random(seed);
+		GameState game = size.create(seed);
+		game.reveal(size.width() / 2, size.height() / 2);
+
+		for (int i = 0; i < size.width() * size.height() / 20; i++) {
+			int x = random.nextInt(size.width());
+			int y = random.nextInt(size.height());
+
+			if (game.isMine(x, y)) {
+				game.toggleFlag(x, y);
+			} else {
+				game.reveal(x, y);
+			}
+		}
+
+		return game;
+	}
+
+}
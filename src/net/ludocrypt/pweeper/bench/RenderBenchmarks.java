@@ -0,0 +1,97 @@
+package net.ludocrypt.pweeper.bench;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.ludocrypt.pweeper.PweeperMain;
+import net.ludocrypt.pweeper.game.GameState;
+import net.ludocrypt.pweeper.game.Preset;
+import net.ludocrypt.pweeper.render.BoardOverview;
+import net.ludocrypt.pweeper.render.TileCache;
+
+// Arguments: [warmup ms] [measure ms]
+public class RenderBenchmarks {
+	public static final Preset HUGE = new Preset("Huge", 500, 500, 47165, 22896);
+
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		PweeperMain.loadSprites();
+
+		BenchmarkRunner runner = new BenchmarkRunner(args.length > 0 ? Long.parseLong(args[0]) : 500, args.length > 1 ? Long.parseLong(args[1]) : 1000);
+
+		System.out.println(BenchmarkRunner.Result.header());
+
+		List<Preset> sizes = new ArrayList<>(EngineBenchmarks.SIZES);
+		sizes.add(HUGE);
+
+		for (Preset size : sizes) {
+			GameState game = EngineBenchmarks.midGame(size, EngineBenchmarks.SEED);
+			BufferedImage canvas = new BufferedImage(size.width() * 20 + 20, size.height() * 20 + 80, BufferedImage.TYPE_INT_ARGB);
+
+			// The seven separate layer passes that full frames used before the fused drawBoard
+			System.out.println(runner.run("draw.layers", size.name(), () -> game, g -> {
+				Graphics2D graphics = canvas.createGraphics();
+				graphics.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+				g.drawLayers(graphics, true);
+				g.drawGame(graphics, g.isWon());
+				graphics.dispose();
+				return canvas.getRGB(canvas.getWidth() / 2, canvas.getHeight() / 2);
+			}));
+
+			System.out.println(runner.run("draw.full", size.name(), () -> game, g -> {
+				g.invalidate();
+				g.draw(canvas, true);
+				return canvas.getRGB(canvas.getWidth() / 2, canvas.getHeight() / 2);
+			}));
+
+			// Renders, from an empty cache, the tiles a 1280x720 view of the top left corner shows
+			TileCache tiles = new TileCache(canvas.getWidth(), canvas.getHeight(), PweeperMain.TILE_CACHE_BYTES, (graphics, x, y, w, h) -> game.drawRegion(graphics, x, y, w, h, true));
+
+			System.out.println(runner.run("draw.tiles", size.name(), () -> game, g -> {
+				g.invalidate();
+				g.draw(tiles, true);
+
+				long sum = 0;
+
+				for (int row = 0; row < Math.min(720 / TileCache.TILE_SIZE + 1, tiles.getRows()); row++) {
+					for (int column = 0; column < Math.min(1280 / TileCache.TILE_SIZE + 1, tiles.getColumns()); column++) {
+						sum += tiles.get(column, row).getRGB(0, 0);
+					}
+				}
+
+				return sum;
+			}));
+
+			// A second passing on the timer, with the tile the timer sits in cached
+			System.out.println(runner.run("draw.tick", size.name(), () -> game, g -> {
+				g.startNanos -= TimeUnit.SECONDS.toNanos(1);
+				g.draw(tiles, true);
+				return tiles.get((size.width() * 20 - 69) / TileCache.TILE_SIZE, 0).getRGB(0, 0);
+			}));
+
+			// Rebuilds the one pixel per cell overview used when zoomed far out
+			BoardOverview overview = new BoardOverview(size.width(), size.height());
+
+			System.out.println(runner.run("draw.overview", size.name(), () -> game, g -> {
+				g.invalidate();
+				g.draw(overview);
+				return overview.getImage().getRGB(size.width() / 2, size.height() / 2);
+			}));
+
+			// Alternates the mouse between two neighbouring cells, as a slow mouse move would
+			int[] step = { 0 };
+
+			System.out.println(runner.run("draw.hover", size.name(), () -> game, g -> {
+				g.setMouse(size.width() / 2 + (step[0]++ & 1), size.height() / 2);
+				g.draw(canvas, true);
+				return canvas.getRGB(canvas.getWidth() / 2, canvas.getHeight() / 2);
+			}));
+		}
+
+		System.out.println("sink " + runner.getSink());
+	}
+
+}
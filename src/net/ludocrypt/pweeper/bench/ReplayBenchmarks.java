@@ -0,0 +1,86 @@
+package net.ludocrypt.pweeper.bench;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Random;
+
+import net.ludocrypt.pweeper.game.GameState;
+import net.ludocrypt.pweeper.game.MoveJournal;
+import net.ludocrypt.pweeper.game.Preset;
+import net.ludocrypt.pweeper.game.ReplaySeeker;
+
+// Replays move journals straight into a fresh board, so a recorded session times the engine the
+// same way on every run, and seeks through them from keyframes. Without files it records a
+// seeded session for each size first.
+// Arguments: [warmup ms] [measure ms] [journal files...]
+public class ReplayBenchmarks {
+
+	public static void main(String[] args) throws IOException {
+		BenchmarkRunner runner = new BenchmarkRunner(args.length > 0 ? Long.parseLong(args[0]) : 500, args.length > 1 ? Long.parseLong(args[1]) : 1000);
+
+		System.out.println(BenchmarkRunner.Result.header());
+
+		if (args.length > 2) {
+			for (int i = 2; i < args.length; i++) {
+				Path path = Path.of(args[i]);
+
+				try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+					replay(runner, path.getFileName().toString(), MoveJournal.read(channel));
+				}
+			}
+		} else {
+			for (Preset size : List.of(Preset.HARD, EngineBenchmarks.LARGE, EngineBenchmarks.MILLION)) {
+				replay(runner, size.name(), recorded(size, EngineBenchmarks.SEED));
+			}
+		}
+
+		System.out.println("sink " + runner.getSink());
+	}
+
+	private static void replay(BenchmarkRunner runner, String name, MoveJournal journal) {
+		System.out.println(runner.run("journal.replay", name, journal::createGame, game -> {
+			journal.replay(game);
+			return game.getTotalRevealed();
+		}));
+		System.out.println("  " + journal.getMoves() + " moves in " + journal.getSize() + " bytes");
+
+		// Random seeks cost about the same however long the journal is
+		ReplaySeeker seeker = new ReplaySeeker(journal);
+		Random random = new Random(1);
+
+		System.out.println(runner.run("journal.seek", name, () -> random.nextInt(journal.getMoves() + 1), move -> {
+			seeker.seek(move);
+			return seeker.getGame().getTotalRevealed();
+		}));
+		System.out.println("  " + seeker.getKeyframes() + " keyframes in " + seeker.getKeyframeBytes() + " bytes");
+	}
+
+	// Plays like EngineBenchmarks.midGame with a journal attached, adding chords on numbers
+	static MoveJournal recorded(Preset size, long seed) {
+		Random random = new Random(seed);
+		GameState game = size.create(seed);
+		MoveJournal journal = new MoveJournal(game);
+		game.setJournal(journal);
+
+		game.reveal(size.width() / 2, size.height() / 2);
+
+		for (int i = 0; i < size.width() * size.height() / 20; i++) {
+			int x = random.nextInt(size.width());
+			int y = random.nextInt(size.height());
+
+			if (game.isMine(x, y)) {
+				game.toggleFlag(x, y);
+			} else if (game.isRevealed(x, y)) {
+				game.autoReveal(x, y);
+			} else {
+				game.reveal(x, y);
+			}
+		}
+
+		return journal;
+	}
+
+}
@@ -0,0 +1,85 @@
+package net.ludocrypt.pweeper.game;
+
+import java.util.Arrays;
+
+public class BitGrid {
+	private final int width, height;
+	private final long[] words;
+
+	public BitGrid(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.words = new long[(int) (((long) width * height + 63) >>> 6)];
+	}
+
+	public int index(int x, int y) {
+		return y * width + x;
+	}
+
+	public boolean get(int x, int y) {
+		return get(index(x, y));
+	}
+
+	public boolean get(int i) {
+		return (words[i >>> 6] & (1L << i)) != 0;
+	}
+
+	public void set(int x, int y, boolean value) {
+		set(index(x, y), value);
+	}
+
+	public void set(int i, boolean value) {
+		if (value) {
+			words[i >>> 6] |= 1L << i;
+		} else {
+			words[i >>> 6] &= ~(1L << i);
+		}
+	}
+
+	public boolean flip(int x, int y) {
+		int i = index(x, y);
+		words[i >>> 6] ^= 1L << i;
+		return get(i);
+	}
+
+	public void clear() {
+		Arrays.fill(words, 0L);
+	}
+
+	public void copyFrom(BitGrid other) {
+		System.arraycopy(other.words, 0, words, 0, words.length);
+	}
+
+	public int cardinality() {
+		int count = 0;
+
+		for (long word : words) {
+			count += Long.bitCount(word);
+		}
+
+		return count;
+	}
+
+	public int countAnd(BitGrid other) {
+		int count = 0;
+
+		for (int i = 0; i < words.length; i++) {
+			count += Long.bitCount(words[i] & other.words[i]);
+		}
+
+		return count;
+	}
+
+	public long[] words() {
+		return words;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+}
@@ -0,0 +1,227 @@
+package net.ludocrypt.pweeper.game;
+
+import java.util.Arrays;
+import java.util.random.RandomGenerator;
+
+public class BoardGenerator {
+	private static final int MAX_REJECTIONS = 32;
+
+	private final int width, height;
+	private final RandomGenerator random;
+
+	private int[] reserved = new int[0];
+
+	private int rejectedSamples;
+	private boolean candidateScan;
+
+	public BoardGenerator(int width, int height, RandomGenerator random) {
+		this.width = width;
+		this.height = height;
+		this.random = random;
+	}
+
+	// Keeps the 3x3 block around (x, y) free of mines and portals
+	public void reserve(int x, int y) {
+		int[] cells = new int[9];
+		int n = 0;
+
+		for (int dy = -1; dy <= 1; dy++) {
+			for (int dx = -1; dx <= 1; dx++) {
+				if (x + dx >= 0 && y + dy >= 0 && x + dx < width && y + dy < height) {
+					cells[n++] = (y + dy) * width + x + dx;
+				}
+			}
+		}
+
+		reserved = Arrays.copyOf(cells, n);
+	}
+
+	public boolean isReserved(int cell) {
+		for (int r : reserved) {
+			if (r == cell) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	// Partial Fisher-Yates over the unreserved cells, with the swapped entries kept in a
+	// sparse table so the cost only depends on the number of mines placed
+	public int placeMines(BitGrid mineGrid, int mines) {
+		int candidates = width * height - reserved.length;
+		int count = Math.min(mines, candidates);
+
+		SwapTable swaps = new SwapTable(count);
+
+		for (int i = 0; i < count; i++) {
+			int j = i + random.nextInt(candidates - i);
+
+			int picked = swaps.get(j);
+			swaps.put(j, swaps.get(i));
+
+			mineGrid.set(toCell(picked), true);
+		}
+
+		return count;
+	}
+
+	private int toCell(int candidate) {
+		int cell = candidate;
+
+		for (int r : reserved) {
+			if (r <= cell) {
+				cell++;
+			}
+		}
+
+		return cell;
+	}
+
+	public int placePortals(PortalIndex portalIndex, BitGrid mineGrid, NeighborCounts counts, int portals) {
+		int[] pool = null;
+		int poolSize = 0;
+
+		int placed = 0;
+
+		while (placed < portals) {
+			int a = -1;
+			int b = -1;
+
+			if (pool == null) {
+				a = sample(portalIndex, mineGrid, counts, -1);
+
+				if (a >= 0) {
+					b = sample(portalIndex, mineGrid, counts, a);
+				}
+
+				if (b < 0) {
+					pool = collect(portalIndex, mineGrid, counts);
+					poolSize = pool.length;
+					candidateScan = true;
+					continue;
+				}
+			} else {
+				if (poolSize < 2) {
+					break;
+				}
+
+				int i = random.nextInt(poolSize);
+				a = pool[i];
+				pool[i] = pool[--poolSize];
+
+				int start = random.nextInt(poolSize);
+
+				for (int k = 0; k < poolSize; k++) {
+					int j = (start + k) % poolSize;
+
+					if (isPairable(a, pool[j])) {
+						b = pool[j];
+						pool[j] = pool[--poolSize];
+						break;
+					}
+				}
+
+				if (b < 0) {
+					continue;
+				}
+			}
+
+			portalIndex.put(a % width, a / width, b % width, b / width);
+			placed++;
+		}
+
+		return placed;
+	}
+
+	private int sample(PortalIndex portalIndex, BitGrid mineGrid, NeighborCounts counts, int partner) {
+		for (int attempt = 0; attempt < MAX_REJECTIONS; attempt++) {
+			int cell = random.nextInt(width * height);
+
+			if (isPortalCandidate(cell, portalIndex, mineGrid, counts) && (partner < 0 || isPairable(partner, cell))) {
+				return cell;
+			}
+
+			rejectedSamples++;
+		}
+
+		return -1;
+	}
+
+	public int getRejectedSamples() {
+		return rejectedSamples;
+	}
+
+	// Whether sampling gave up and every cell was scanned for portal candidates instead
+	public boolean isCandidateScan() {
+		return candidateScan;
+	}
+
+	private int[] collect(PortalIndex portalIndex, BitGrid mineGrid, NeighborCounts counts) {
+		int[] pool = new int[64];
+		int size = 0;
+
+		for (int cell = 0; cell < width * height; cell++) {
+			if (isPortalCandidate(cell, portalIndex, mineGrid, counts)) {
+				if (size == pool.length) {
+					pool = Arrays.copyOf(pool, size * 2);
+				}
+
+				pool[size++] = cell;
+			}
+		}
+
+		return Arrays.copyOf(pool, size);
+	}
+
+	private boolean isPortalCandidate(int cell, PortalIndex portalIndex, BitGrid mineGrid, NeighborCounts counts) {
+		int x = cell % width;
+		int y = cell / width;
+
+		return !mineGrid.get(cell) && counts.getMines(cell) != 1 && !portalIndex.contains(x, y) && !isReserved(cell);
+	}
+
+	private boolean isPairable(int a, int b) {
+		return a % width != b % width && a / width != b / width;
+	}
+
+	private static class SwapTable {
+		private final int[] keys;
+		private final int[] values;
+		private final int mask, shift;
+
+		SwapTable(int entries) {
+			int capacity = Integer.highestOneBit(Math.max(entries, 4) * 2 - 1) * 2;
+
+			this.keys = new int[capacity];
+			this.values = new int[capacity];
+			this.mask = capacity - 1;
+			this.shift = Integer.numberOfLeadingZeros(capacity) + 1;
+		}
+
+		int get(int index) {
+			int key = index + 1;
+
+			for (int i = (key * 0x9E3779B9) >>> shift;; i = (i + 1) & mask) {
+				if (keys[i] == key) {
+					return values[i];
+				} else if (keys[i] == 0) {
+					return index;
+				}
+			}
+		}
+
+		void put(int index, int value) {
+			int key = index + 1;
+			int i = (key * 0x9E3779B9) >>> shift;
+
+			while (keys[i] != 0 && keys[i] != key) {
+				i = (i + 1) & mask;
+			}
+
+			keys[i] = key;
+			values[i] = value;
+		}
+	}
+
+}
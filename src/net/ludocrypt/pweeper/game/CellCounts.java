@@ -0,0 +1,114 @@
+package net.ludocrypt.pweeper.game;
+
+import java.util.List;
+
+// Solution counts over one independent group of unknown cells: counts[k] ways to place k
+// mines on them, and mines[i][k] the mines on vars[i] summed over those ways.
+class CellCounts {
+	final int[] vars;
+	final double[] counts;
+	final double[][] mines;
+
+	double[] probabilities;
+
+	CellCounts(int[] vars, double[] counts, double[][] mines) {
+		this.vars = vars;
+		this.counts = counts;
+		this.mines = mines;
+	}
+
+	// Groups that share no cells and no numbers, counted as one
+	static CellCounts join(List<CellCounts> parts) {
+		int n = 0;
+
+		for (CellCounts part : parts) {
+			n += part.vars.length;
+		}
+
+		int size = parts.size();
+		double[][] prefix = new double[size + 1][];
+		double[][] suffix = new double[size + 1][];
+
+		prefix[0] = new double[] { 1 };
+		suffix[size] = new double[] { 1 };
+
+		for (int p = 0; p < size; p++) {
+			prefix[p + 1] = convolve(prefix[p], parts.get(p).counts);
+		}
+
+		for (int p = size - 1; p >= 0; p--) {
+			suffix[p] = convolve(parts.get(p).counts, suffix[p + 1]);
+		}
+
+		int[] vars = new int[n];
+		double[][] mines = new double[n][];
+		int next = 0;
+
+		for (int p = 0; p < size; p++) {
+			CellCounts part = parts.get(p);
+			double[] others = convolve(prefix[p], suffix[p + 1]);
+
+			for (int i = 0; i < part.vars.length; i++) {
+				vars[next] = part.vars[i];
+				mines[next++] = convolve(part.mines[i], others);
+			}
+		}
+
+		return new CellCounts(vars, prefix[size], mines);
+	}
+
+	double[] scaledCounts() {
+		double max = max(counts);
+		double[] scaled = new double[counts.length];
+
+		for (int k = 0; k < counts.length; k++) {
+			scaled[k] = max == 0 ? 0 : counts[k] / max;
+		}
+
+		return scaled;
+	}
+
+	// g[k] weighs the ways with k mines here, z is the weight of every way on the board
+	void resolve(double[] g, double z) {
+		double max = max(counts);
+
+		probabilities = new double[vars.length];
+
+		for (int i = 0; i < vars.length; i++) {
+			double p = 0;
+
+			for (int k = 0; k < g.length && k < mines[i].length; k++) {
+				p += mines[i][k] / max * g[k];
+			}
+
+			probabilities[i] = p / z;
+		}
+	}
+
+	private static double max(double[] counts) {
+		double max = 0;
+
+		for (double c : counts) {
+			max = Math.max(max, c);
+		}
+
+		return max;
+	}
+
+	static double[] convolve(double[] a, double[] b) {
+		double[] c = new double[a.length + b.length - 1];
+
+		for (int i = 0; i < a.length; i++) {
+			if (a[i] == 0) {
+				continue;
+			}
+
+			for (int j = 0; j < b.length; j++) {
+				c[i + j] += a[i] * b[j];
+			}
+		}
+
+		return c;
+	}
+
+}
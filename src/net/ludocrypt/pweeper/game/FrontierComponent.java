@@ -0,0 +1,865 @@
+package net.ludocrypt.pweeper.game;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import net.ludocrypt.pweeper.game.GameSolver.Constraint;
+
+// One group of unknown cells linked through revealed numbers. Solutions are counted
+// exactly by sweeping the cells in order and merging every partial assignment that leaves
+// the still-open constraints needing the same number of mines, so the work grows with the
+// width of the frontier instead of the number of solutions.
+class FrontierComponent {
+	// Orderings tried per component, and roughly how many tally entries an exact solve lets
+	// one sweep touch before splitting the component on one of its steps instead
+	private static final int STARTS = 16;
+	static final long MAX_WORK = 1 << 22;
+
+	// States handled per fork/join task
+	private static final int CHUNK = 256;
+
+	final List<Constraint> constraints;
+
+	// Most constraints the sweep may hold open, and the most it holds with the order chosen
+	final int limit;
+	final int width;
+
+	// How many constraints were open where enumerate() gave up
+	int stuck;
+
+	// Global variable ids, in the order they are swept. Cells touched by exactly the same
+	// constraints are interchangeable and are swept together as one step.
+	final int[] vars;
+
+	private final int[] stepStart;
+	private final int[][] stepConstraints;
+	private final int[][] stepCoefs;
+	private final int[] value;
+
+	private Layer[] layers;
+	private double[][] binomials;
+
+	// counts[k] is the number of solutions placing k mines here, stepCounts[i][k] the
+	// expected mines on one cell of step i summed over those solutions
+	double[] counts;
+	double[][] stepCounts;
+
+	FrontierComponent(List<Constraint> constraints, int[] localOf, int limit) {
+		this.constraints = constraints;
+		this.limit = limit;
+
+		int m = constraints.size();
+
+		// Number the variables in order of first appearance, and give every distinct set of
+		// (constraint, coefficient) pairs a step
+		Map<List<Integer>, Integer> stepOf = new HashMap<List<Integer>, Integer>();
+		List<List<Integer>> signatures = new ArrayList<List<Integer>>();
+		List<List<Integer>> members = new ArrayList<List<Integer>>();
+		List<List<Integer>> touching = new ArrayList<List<Integer>>();
+		int[] global = new int[16];
+		int n = 0;
+
+		for (int c = 0; c < m; c++) {
+			Constraint constraint = constraints.get(c);
+
+			for (int j = 0; j < constraint.vars.length; j++) {
+				int v = constraint.vars[j];
+
+				if (localOf[v] < 0) {
+					if (n == global.length) {
+						global = Arrays.copyOf(global, n * 2);
+					}
+
+					localOf[v] = n;
+					global[n++] = v;
+					touching.add(new ArrayList<Integer>());
+				}
+
+				touching.get(localOf[v]).add(c);
+				touching.get(localOf[v]).add(constraint.coefs[j]);
+			}
+		}
+
+		for (int l = 0; l < n; l++) {
+			Integer s = stepOf.get(touching.get(l));
+
+			if (s == null) {
+				s = signatures.size();
+				stepOf.put(touching.get(l), s);
+				signatures.add(touching.get(l));
+				members.add(new ArrayList<Integer>());
+			}
+
+			members.get(s).add(global[l]);
+		}
+
+		int steps = signatures.size();
+		int[][] stepTouching = new int[steps][];
+		int[][] stepCoefs = new int[steps][];
+
+		for (int s = 0; s < steps; s++) {
+			List<Integer> signature = signatures.get(s);
+
+			stepTouching[s] = new int[signature.size() / 2];
+			stepCoefs[s] = new int[signature.size() / 2];
+
+			for (int j = 0; j < signature.size() / 2; j++) {
+				stepTouching[s][j] = signature.get(j * 2);
+				stepCoefs[s][j] = signature.get(j * 2 + 1);
+			}
+		}
+
+		int[] order = order(stepTouching, m);
+
+		this.vars = new int[n];
+		this.stepStart = new int[steps + 1];
+		this.stepConstraints = new int[steps][];
+		this.stepCoefs = new int[steps][];
+
+		int next = 0;
+
+		for (int i = 0; i < steps; i++) {
+			stepStart[i] = next;
+			this.stepConstraints[i] = stepTouching[order[i]];
+			this.stepCoefs[i] = stepCoefs[order[i]];
+
+			for (int v : members.get(order[i])) {
+				localOf[v] = next;
+				vars[next++] = v;
+			}
+		}
+
+		stepStart[steps] = n;
+
+		this.width = width(stepConstraints, m);
+
+		this.value = new int[m];
+
+		for (int c = 0; c < m; c++) {
+			value[c] = constraints.get(c).value;
+		}
+	}
+
+	// Sweeps greedily from a few different first steps and keeps the order whose widest
+	// point leaves the fewest constraints open
+	private static int[] order(int[][] touching, int m) {
+		int steps = touching.length;
+		int starts = Math.min(steps, STARTS);
+
+		int[] count = new int[m];
+
+		for (int[] cs : touching) {
+			for (int c : cs) {
+				count[c]++;
+			}
+		}
+
+		int[][] stepsOf = new int[m][];
+
+		for (int c = 0; c < m; c++) {
+			stepsOf[c] = new int[count[c]];
+			count[c] = 0;
+		}
+
+		for (int s = 0; s < steps; s++) {
+			for (int c : touching[s]) {
+				stepsOf[c][count[c]++] = s;
+			}
+		}
+
+		int[] best = null;
+		long bestWidth = Long.MAX_VALUE;
+
+		for (int k = 0; k < starts; k++) {
+			int[] order = new int[steps];
+			long width = order(touching, stepsOf, (int) ((long) k * steps / starts), order, bestWidth);
+
+			if (width < bestWidth) {
+				best = order;
+				bestWidth = width;
+			}
+		}
+
+		return best;
+	}
+
+	// Picks the steps one at a time, each time taking the one that leaves the fewest
+	// constraints open afterwards, so the frontier the sweep carries stays narrow. Returns
+	// the most constraints it leaves open then the total over all steps, giving up once
+	// that is no better than bound.
+	private static long order(int[][] touching, int[][] stepsOf, int first, int[] order, long bound) {
+		int steps = touching.length;
+		int m = stepsOf.length;
+
+		int[] remaining = new int[m];
+
+		for (int c = 0; c < m; c++) {
+			remaining[c] = stepsOf[c].length;
+		}
+
+		boolean[] placed = new boolean[steps];
+		boolean[] open = new boolean[m];
+		int[] seen = new int[steps];
+		int[] openList = new int[m];
+		int opened = 0, max = 0;
+		long sum = 0;
+
+		for (int i = 0; i < steps; i++) {
+			int best = -1;
+			int bestScore = Integer.MAX_VALUE;
+
+			if (i == 0) {
+				best = first;
+			} else if (opened == 0) {
+				for (int s = 0; s < steps; s++) {
+					if (!placed[s]) {
+						int score = score(touching[s], open, remaining);
+
+						if (score < bestScore) {
+							best = s;
+							bestScore = score;
+						}
+					}
+				}
+			} else {
+				for (int k = 0; k < opened; k++) {
+					for (int s : stepsOf[openList[k]]) {
+						if (!placed[s] && seen[s] != i + 1) {
+							seen[s] = i + 1;
+
+							int score = score(touching[s], open, remaining);
+
+							if (score < bestScore || score == bestScore && s < best) {
+								best = s;
+								bestScore = score;
+							}
+						}
+					}
+				}
+			}
+
+			placed[best] = true;
+			order[i] = best;
+
+			for (int c : touching[best]) {
+				if (--remaining[c] == 0) {
+					if (open[c]) {
+						open[c] = false;
+
+						for (int k = 0; k < opened; k++) {
+							if (openList[k] == c) {
+								openList[k] = openList[--opened];
+								break;
+							}
+						}
+					}
+				} else if (!open[c]) {
+					open[c] = true;
+					openList[opened++] = c;
+				}
+			}
+
+			max = Math.max(max, opened);
+			sum += opened;
+
+			if (((long) max << 32) + sum >= bound) {
+				return Long.MAX_VALUE;
+			}
+		}
+
+		return ((long) max << 32) + sum;
+	}
+
+	// The most constraints the sweep holds open at once
+	private static int width(int[][] stepConstraints, int m) {
+		int[] remaining = new int[m];
+		boolean[] open = new boolean[m];
+
+		for (int[] touched : stepConstraints) {
+			for (int c : touched) {
+				remaining[c]++;
+			}
+		}
+
+		int count = 0, max = 0;
+
+		for (int[] touched : stepConstraints) {
+			for (int c : touched) {
+				if (--remaining[c] == 0) {
+					count -= open[c] ? 1 : 0;
+					open[c] = false;
+				} else if (!open[c]) {
+					open[c] = true;
+					count++;
+				}
+			}
+
+			max = Math.max(max, count);
+		}
+
+		return max;
+	}
+
+	private static int score(int[] touching, boolean[] open, int[] remaining) {
+		int score = 0;
+
+		for (int c : touching) {
+			if (remaining[c] == 1) {
+				score -= open[c] ? 1 : 0;
+			} else if (!open[c]) {
+				score++;
+			}
+		}
+
+		return score;
+	}
+
+	// Counts the solutions, or returns false without finishing if the sweep would hold
+	// more than limit constraints open or touch more than maxWork tally entries. Each step's
+	// states are handled in fixed chunks that are merged in order, so running the chunks as
+	// fork/join tasks gives exactly the same sums as running them one after another.
+	boolean enumerate(boolean parallel, long maxWork) {
+		if (width > limit) {
+			stuck = width;
+			return false;
+		}
+
+		prepare();
+
+		int steps = layers.length;
+		int n = vars.length;
+
+		long work = 0;
+		List<Map<State, Tally>> forward = new ArrayList<Map<State, Tally>>(steps + 1);
+
+		Map<State, Tally> start = new LinkedHashMap<State, Tally>();
+		start.put(new State(new byte[0]), new Tally(0, new double[] { 1 }));
+		forward.add(start);
+
+		for (int i = 0; i < steps; i++) {
+			int step = i;
+			int size = layers[i].size;
+
+			List<Map.Entry<State, Tally>> from = new ArrayList<Map.Entry<State, Tally>>(forward.get(i).entrySet());
+
+			// The backward pass costs about as much again, so give up before a step that would
+			// take the two together over budget
+			for (Map.Entry<State, Tally> entry : from) {
+				work += 2L * (size + 1) * entry.getValue().counts.length;
+			}
+
+			if (work > maxWork) {
+				stuck = layers[i].src.length;
+				return false;
+			}
+
+			List<Map<State, Tally>> parts = inChunks(from.size(), parallel, (lo, hi) -> {
+				Map<State, Tally> part = new LinkedHashMap<State, Tally>();
+
+				for (Map.Entry<State, Tally> entry : from.subList(lo, hi)) {
+					for (int j = 0; j <= size; j++) {
+						State s = layers[step].apply(entry.getKey(), j);
+
+						if (s != null) {
+							part.put(s, Tally.add(part.get(s), entry.getValue(), j, binomials[size][j]));
+						}
+					}
+				}
+
+				return part;
+			});
+
+			Map<State, Tally> to = new LinkedHashMap<State, Tally>();
+
+			for (Map<State, Tally> part : parts) {
+				for (Map.Entry<State, Tally> entry : part.entrySet()) {
+					Tally t = to.get(entry.getKey());
+					to.put(entry.getKey(), t == null ? entry.getValue() : Tally.add(t, entry.getValue(), 0, 1));
+				}
+			}
+
+			forward.add(to);
+		}
+
+		counts = new double[n + 1];
+		stepCounts = new double[steps][n + 1];
+
+		Map<State, Tally> backward = new LinkedHashMap<State, Tally>();
+
+		for (State s : forward.get(steps).keySet()) {
+			backward.put(s, new Tally(0, new double[] { 1 }));
+		}
+
+		for (int i = steps - 1; i >= 0; i--) {
+			int step = i;
+			Map<State, Tally> next = backward;
+
+			List<Map.Entry<State, Tally>> from = new ArrayList<Map.Entry<State, Tally>>(forward.get(i).entrySet());
+
+			List<Chunk> parts = inChunks(from.size(), parallel, (lo, hi) -> {
+				Chunk part = new Chunk(new LinkedHashMap<State, Tally>(), new double[n + 1]);
+
+				for (Map.Entry<State, Tally> entry : from.subList(lo, hi)) {
+					backward(step, entry.getKey(), entry.getValue(), next, part.completions, part.marginal);
+				}
+
+				return part;
+			});
+
+			backward = new LinkedHashMap<State, Tally>();
+
+			for (Chunk part : parts) {
+				backward.putAll(part.completions);
+
+				for (int k = 0; k <= n; k++) {
+					stepCounts[i][k] += part.marginal[k];
+				}
+			}
+
+			forward.set(i + 1, null);
+		}
+
+		for (Tally t : backward.values()) {
+			t.addInto(counts, 0);
+		}
+
+		return true;
+	}
+
+	// Runs body over [0, size) in CHUNK sized pieces, as fork/join tasks if parallel, and
+	// returns the results in chunk order
+	private static <T> List<T> inChunks(int size, boolean parallel, ChunkBody<T> body) {
+		int chunks = (size + CHUNK - 1) / CHUNK;
+
+		List<T> results = new ArrayList<T>(Collections.nCopies(chunks, (T) null));
+
+		if (!parallel || chunks < 2) {
+			for (int k = 0; k < chunks; k++) {
+				results.set(k, body.run(k * CHUNK, Math.min(size, (k + 1) * CHUNK)));
+			}
+
+			return results;
+		}
+
+		List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+
+		for (int k = 0; k < chunks; k++) {
+			int chunk = k;
+
+			tasks.add(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					results.set(chunk, body.run(chunk * CHUNK, Math.min(size, (chunk + 1) * CHUNK)));
+				}
+			});
+		}
+
+		ForkJoinTask.invokeAll(tasks);
+
+		return results;
+	}
+
+	interface ChunkBody<T> {
+		T run(int lo, int hi);
+	}
+
+	static class Chunk {
+		final Map<State, Tally> completions;
+		final double[] marginal;
+
+		Chunk(Map<State, Tally> completions, double[] marginal) {
+			this.completions = completions;
+			this.marginal = marginal;
+		}
+	}
+
+	// The constraint that stays open over the most steps, the one whose loss narrows the
+	// sweep the most
+	Constraint widest() {
+		int steps = stepConstraints.length;
+
+		int[] first = new int[value.length];
+		int[] last = new int[value.length];
+		Arrays.fill(first, steps);
+
+		for (int i = 0; i < steps; i++) {
+			for (int c : stepConstraints[i]) {
+				first[c] = Math.min(first[c], i);
+				last[c] = Math.max(last[c], i);
+			}
+		}
+
+		int widest = 0;
+
+		for (int c = 1; c < value.length; c++) {
+			if (last[c] - first[c] > last[widest] - first[widest]) {
+				widest = c;
+			}
+		}
+
+		return constraints.get(widest);
+	}
+
+	// The cells of up to count steps, those touching the most of the constraints open where
+	// the sweep is widest first, as the steps whose mine counts settle the most of what holds
+	// it open
+	int[][] busiest(int count) {
+		int steps = stepConstraints.length;
+		int m = value.length;
+
+		int[] remaining = new int[m];
+
+		for (int[] touched : stepConstraints) {
+			for (int c : touched) {
+				remaining[c]++;
+			}
+		}
+
+		boolean[] open = new boolean[m];
+		boolean[] widest = new boolean[m];
+		int opened = 0, max = -1;
+
+		for (int i = 0; i < steps; i++) {
+			for (int c : stepConstraints[i]) {
+				if (--remaining[c] == 0) {
+					opened -= open[c] ? 1 : 0;
+					open[c] = false;
+				} else if (!open[c]) {
+					open[c] = true;
+					opened++;
+				}
+			}
+
+			if (opened > max) {
+				max = opened;
+				System.arraycopy(open, 0, widest, 0, m);
+			}
+		}
+
+		int[] touched = new int[steps];
+		Integer[] ranked = new Integer[steps];
+
+		for (int i = 0; i < steps; i++) {
+			for (int c : stepConstraints[i]) {
+				touched[i] += widest[c] ? 1 : 0;
+			}
+
+			ranked[i] = i;
+		}
+
+		// Ties go to the step touching the most constraints overall
+		Arrays.sort(ranked, (a, b) -> touched[a] != touched[b] ? touched[b] - touched[a] : stepConstraints[b].length - stepConstraints[a].length);
+
+		int[][] busiest = new int[Math.min(count, steps)][];
+
+		for (int j = 0; j < busiest.length; j++) {
+			busiest[j] = Arrays.copyOfRange(vars, stepStart[ranked[j]], stepStart[ranked[j] + 1]);
+		}
+
+		return busiest;
+	}
+
+	// Collects the completions of one step i state from the step i + 1 completions, and
+	// adds the expected mines per cell of step i to marginal
+	void backward(int i, State state, Tally prefix, Map<State, Tally> next, Map<State, Tally> out, double[] marginal) {
+		Tally completions = null;
+		int size = layers[i].size;
+
+		for (int j = 0; j <= size; j++) {
+			State s = layers[i].apply(state, j);
+
+			if (s == null) {
+				continue;
+			}
+
+			Tally after = next.get(s);
+
+			if (after == null) {
+				continue;
+			}
+
+			completions = Tally.add(completions, after, j, binomials[size][j]);
+
+			if (j > 0) {
+				prefix.convolveInto(after, marginal, j, binomials[size][j] * j / size);
+			}
+		}
+
+		if (completions != null) {
+			out.put(state, completions);
+		}
+	}
+
+	// Works out, for each step of the sweep, which constraints are open before and after
+	// it and how the step changes the mines each of them still needs
+	private void prepare() {
+		int steps = stepConstraints.length;
+		int m = value.length;
+
+		int[] last = new int[m];
+		int[] first = new int[m];
+		int[] slack = new int[m];
+
+		Arrays.fill(first, steps);
+
+		int largest = 0;
+
+		for (int i = 0; i < steps; i++) {
+			int size = stepStart[i + 1] - stepStart[i];
+			largest = Math.max(largest, size);
+
+			for (int j = 0; j < stepConstraints[i].length; j++) {
+				int c = stepConstraints[i][j];
+
+				first[c] = Math.min(first[c], i);
+				last[c] = Math.max(last[c], i);
+				slack[c] += stepCoefs[i][j] * size;
+			}
+		}
+
+		binomials = new double[largest + 1][];
+
+		for (int s = 0; s <= largest; s++) {
+			binomials[s] = new double[s + 1];
+			binomials[s][0] = 1;
+
+			for (int j = 1; j <= s; j++) {
+				binomials[s][j] = binomials[s][j - 1] * (s - j + 1) / j;
+			}
+		}
+
+		layers = new Layer[steps];
+
+		int[] open = new int[0];
+
+		for (int i = 0; i < steps; i++) {
+			int size = stepStart[i + 1] - stepStart[i];
+			int[] touched = stepConstraints[i];
+
+			for (int j = 0; j < touched.length; j++) {
+				slack[touched[j]] -= stepCoefs[i][j] * size;
+			}
+
+			int[] nextOpen = new int[open.length + touched.length];
+			int count = 0;
+
+			for (int c : open) {
+				if (last[c] != i) {
+					nextOpen[count++] = c;
+				}
+			}
+
+			for (int c : touched) {
+				if (first[c] == i && last[c] != i) {
+					nextOpen[count++] = c;
+				}
+			}
+
+			nextOpen = Arrays.copyOf(nextOpen, count);
+
+			Layer layer = new Layer(size, nextOpen.length);
+
+			for (int j = 0; j < nextOpen.length; j++) {
+				int c = nextOpen[j];
+
+				layer.src[j] = indexOf(open, c);
+				layer.init[j] = value[c];
+				layer.coef[j] = coefficient(touched, stepCoefs[i], c);
+				layer.slack[j] = slack[c];
+			}
+
+			int closing = 0;
+
+			for (int c : touched) {
+				if (last[c] == i) {
+					closing++;
+				}
+			}
+
+			layer.closeSrc = new int[closing];
+			layer.closeInit = new int[closing];
+			layer.closeCoef = new int[closing];
+
+			int k = 0;
+
+			for (int c : touched) {
+				if (last[c] == i) {
+					layer.closeSrc[k] = indexOf(open, c);
+					layer.closeInit[k] = value[c];
+					layer.closeCoef[k] = coefficient(touched, stepCoefs[i], c);
+					k++;
+				}
+			}
+
+			layers[i] = layer;
+			open = nextOpen;
+		}
+	}
+
+	private static int indexOf(int[] array, int c) {
+		for (int i = 0; i < array.length; i++) {
+			if (array[i] == c) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	private static int coefficient(int[] touched, int[] coefs, int c) {
+		for (int j = 0; j < touched.length; j++) {
+			if (touched[j] == c) {
+				return coefs[j];
+			}
+		}
+
+		return 0;
+	}
+
+	// The counts per cell, once enumerate() has finished
+	CellCounts cellCounts() {
+		double[][] mines = new double[vars.length][];
+
+		for (int i = 0; i < stepCounts.length; i++) {
+			Arrays.fill(mines, stepStart[i], stepStart[i + 1], stepCounts[i]);
+		}
+
+		return new CellCounts(vars, counts, mines);
+	}
+
+	static class Layer {
+		// Number of interchangeable cells in this step
+		final int size;
+
+		// For each constraint open after this step: where its need sits in the previous
+		// state (or -1 if it opens here), its value, the coefficient of this step's
+		// cells and the most the remaining cells can still add
+		final int[] src, init, coef, slack;
+
+		// Constraints whose last cells are in this step and must end up satisfied
+		int[] closeSrc, closeInit, closeCoef;
+
+		Layer(int size, int open) {
+			this.size = size;
+			this.src = new int[open];
+			this.init = new int[open];
+			this.coef = new int[open];
+			this.slack = new int[open];
+		}
+
+		// The state after placing mines on this step's cells, or null if that breaks a
+		// constraint
+		State apply(State state, int mines) {
+			for (int j = 0; j < closeSrc.length; j++) {
+				int need = (closeSrc[j] >= 0 ? state.needs[closeSrc[j]] : closeInit[j]) - mines * closeCoef[j];
+
+				if (need != 0) {
+					return null;
+				}
+			}
+
+			byte[] needs = new byte[src.length];
+
+			for (int j = 0; j < src.length; j++) {
+				int need = (src[j] >= 0 ? state.needs[src[j]] : init[j]) - mines * coef[j];
+
+				if (need < 0 || need > slack[j]) {
+					return null;
+				}
+
+				needs[j] = (byte) need;
+			}
+
+			return new State(needs);
+		}
+	}
+
+	static class State {
+		final byte[] needs;
+		final int hash;
+
+		State(byte[] needs) {
+			this.needs = needs;
+			this.hash = Arrays.hashCode(needs);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof State && Arrays.equals(needs, ((State) o).needs);
+		}
+	}
+
+	// Solution counts indexed by mine count, stored from offset up
+	static class Tally {
+		final int offset;
+		final double[] counts;
+
+		Tally(int offset, double[] counts) {
+			this.offset = offset;
+			this.counts = counts;
+		}
+
+		// a + weight * b shifted up by shift. Reuses a when b already fits inside it; a is
+		// always a tally built here, never one still shared with another map.
+		static Tally add(Tally a, Tally b, int shift, double weight) {
+			int bOffset = b.offset + shift;
+
+			if (a == null) {
+				double[] copy = new double[b.counts.length];
+
+				for (int k = 0; k < copy.length; k++) {
+					copy[k] = b.counts[k] * weight;
+				}
+
+				return new Tally(bOffset, copy);
+			}
+
+			int lo = Math.min(a.offset, bOffset);
+			int hi = Math.max(a.offset + a.counts.length, bOffset + b.counts.length);
+
+			double[] sum = a.counts;
+
+			if (lo != a.offset || hi - lo != a.counts.length) {
+				sum = new double[hi - lo];
+				System.arraycopy(a.counts, 0, sum, a.offset - lo, a.counts.length);
+			}
+
+			for (int k = 0; k < b.counts.length; k++) {
+				sum[bOffset - lo + k] += b.counts[k] * weight;
+			}
+
+			return sum == a.counts ? a : new Tally(lo, sum);
+		}
+
+		void addInto(double[] out, int shift) {
+			for (int k = 0; k < counts.length; k++) {
+				out[offset + shift + k] += counts[k];
+			}
+		}
+
+		void convolveInto(Tally other, double[] out, int shift, double weight) {
+			for (int a = 0; a < counts.length; a++) {
+				double c = counts[a] * weight;
+
+				for (int b = 0; b < other.counts.length; b++) {
+					out[offset + other.offset + a + b + shift] += c * other.counts[b];
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,116 @@
+package net.ludocrypt.pweeper.game;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+// Flight Recorder events for the engine's expensive operations, so a stutter in a recording can
+// be matched to what the game was doing at the time. Each carries its duration and how much work
+// it did. Unless a recording turns them on, they cost about as much as an allocation.
+public class GameEvents {
+
+	@Name("net.ludocrypt.pweeper.BoardGeneration")
+	@Label("Board Generation")
+	@Category({ "Pweeper", "Engine" })
+	@Description("Mines and portals placed on a new board, or placed again around the first click")
+	public static class BoardGeneration extends Event {
+		@Label("Width")
+		public int width;
+
+		@Label("Height")
+		public int height;
+
+		@Label("Mines")
+		public int mines;
+
+		@Label("Portals Requested")
+		public int portalsRequested;
+
+		@Label("Portals Placed")
+		public int portalsPlaced;
+
+		@Label("First Click")
+		@Description("Placed again so the first cell opened is safe")
+		public boolean firstClick;
+
+		@Label("Rejected Samples")
+		@Description("Random portal cells drawn and thrown away before one fit")
+		public int rejectedSamples;
+
+		@Label("Candidate Scan")
+		@Description("Random draws kept failing, so every cell was scanned for portal candidates")
+		public boolean candidateScan;
+	}
+
+	@Name("net.ludocrypt.pweeper.RevealCascade")
+	@Label("Reveal Cascade")
+	@Category({ "Pweeper", "Engine" })
+	@Description("A revealed zero opening the region around it")
+	public static class RevealCascade extends Event {
+		@Label("X")
+		public int x;
+
+		@Label("Y")
+		public int y;
+
+		@Label("Cells Opened")
+		public int cellsOpened;
+	}
+
+	@Name("net.ludocrypt.pweeper.AutoReveal")
+	@Label("Auto Reveal")
+	@Category({ "Pweeper", "Engine" })
+	@Description("A chord on a satisfied number, opening its unflagged neighbours")
+	public static class AutoReveal extends Event {
+		@Label("X")
+		public int x;
+
+		@Label("Y")
+		public int y;
+
+		@Label("Cells Opened")
+		public int cellsOpened;
+	}
+
+	@Name("net.ludocrypt.pweeper.Solve")
+	@Label("Solve")
+	@Category({ "Pweeper", "Solver" })
+	@Description("A GameSolver run working out every cell's mine probability")
+	public static class Solve extends Event {
+		@Label("Width")
+		public int width;
+
+		@Label("Height")
+		public int height;
+
+		@Label("Variables")
+		@Description("Hidden cells next to a revealed number")
+		public int variables;
+
+		@Label("Constraints")
+		public int constraints;
+
+		@Label("Components")
+		@Description("Independent parts of the frontier that were counted")
+		public int components;
+
+		@Label("Exact")
+		@Description("False if numbers had to be dropped to finish in time")
+		public boolean exact;
+	}
+
+	@Name("net.ludocrypt.pweeper.BoardScan")
+	@Label("Board Scan")
+	@Category({ "Pweeper", "Engine" })
+	@Description("A pass over every cell of the board")
+	public static class BoardScan extends Event {
+		@Label("Operation")
+		public String operation;
+
+		@Label("Cells")
+		public int cells;
+	}
+
+}
@@ -7,18 +7,20 @@ import java.awt.event.MouseWheelEvent;
 import javax.swing.JPanel;
 import javax.swing.SwingUtilities;
 
-import org.joml.Matrix4f;
 import org.joml.Vector2f;
-import org.joml.Vector3f;
 
 import net.ludocrypt.pweeper.PweeperMain;
 import net.ludocrypt.pweeper.game.GameState.Int2;
+import net.ludocrypt.pweeper.render.FrameScheduler;
 import net.ludocrypt.pweeper.render.Viewport;
 
 public class GameMouseController extends MouseAdapter {
 
 	private static final int GRACE_PERIOD_MS = 50;
 
+	// The face is hit tested on its own grid, shifted so its two cells line up with the sprite
+	private static final int FACE_OFFSET_Y = 75;
+
 	private GameState gameState;
 	protected JPanel drawPanel;
 	private boolean realGame;
@@ -37,6 +39,8 @@ public class GameMouseController extends MouseAdapter {
 	private boolean middleClick = false;
 	private double lastX, lastY;
 
+	private FrameScheduler scheduler;
+
 	public GameMouseController(GameState gameState, JPanel drawPanel, boolean realGame, Int2 gameOffset, Int2 clickRatio, Viewport viewport) {
 		this.gameState = gameState;
 		this.drawPanel = drawPanel;
@@ -51,6 +55,28 @@ public class GameMouseController extends MouseAdapter {
 		this(gameState, drawPanel, true, new Int2(10, 70), new Int2(0, 0), viewport);
 	}
 
+	// With a scheduler, frames are asked for by the game and the viewport as they change,
+	// instead of after every mouse event
+	public void setFrameScheduler(FrameScheduler scheduler) {
+		this.scheduler = scheduler;
+		this.gameState.setChangeListener(scheduler == null ? null : scheduler::requestFrame);
+	}
+
+	private void repaint() {
+		if (scheduler == null) {
+			drawPanel.repaint();
+		}
+	}
+
+	// Needed even with a scheduler, since neither the game nor the viewport reports these
+	private void requestFrame() {
+		if (scheduler == null) {
+			drawPanel.repaint();
+		} else {
+			scheduler.requestFrame();
+		}
+	}
+
 	@Override
 	public void mousePressed(MouseEvent e) {
 
@@ -75,9 +101,8 @@ public class GameMouseController extends MouseAdapter {
 
 		mouseDragged(e);
 
-		Int2 pos = getCell(new Int2(e.getX(), e.getY()));
-		int x = pos.x();
-		int y = pos.y();
+		int x = getCellX(e.getX());
+		int y = getCellY(e.getY());
 
 		if (gameState.isInBounds(x, y)) {
 			if (SwingUtilities.isMiddleMouseButton(e) || doubleClick) {
@@ -97,8 +122,8 @@ public class GameMouseController extends MouseAdapter {
 
 		if (SwingUtilities.isMiddleMouseButton(e)) {
 			middleClick = true;
-			lastX = ((double) e.getX() / (double) getScalingRatio().x());
-			lastY = ((double) e.getY() / (double) getScalingRatio().y());
+			lastX = ((double) e.getX() / (double) getScalingRatioX());
+			lastY = ((double) e.getY() / (double) getScalingRatioY());
 		}
 	}
 
@@ -109,8 +134,8 @@ public class GameMouseController extends MouseAdapter {
 		}
 
 		if (middleClick) {
-			double dx = ((double) e.getX() / (double) getScalingRatio().x()) - lastX;
-			double dy = ((double) e.getY() / (double) getScalingRatio().y()) - lastY;
+			double dx = ((double) e.getX() / (double) getScalingRatioX()) - lastX;
+			double dy = ((double) e.getY() / (double) getScalingRatioY()) - lastY;
 			viewport.setMouse(dx, dy);
 
 			if (dx * dx + dy * dy > 0.00001) {
@@ -119,7 +144,7 @@ public class GameMouseController extends MouseAdapter {
 				doubleClick = false;
 				gameState.setClicked(clicked);
 				gameState.setAround(false);
-				drawPanel.repaint();
+				requestFrame();
 			}
 		}
 
@@ -134,9 +159,8 @@ public class GameMouseController extends MouseAdapter {
 			rightPressTime = 0;
 		}
 
-		Int2 pos = getCell(new Int2(e.getX(), e.getY()));
-		int x = pos.x();
-		int y = pos.y();
+		int x = getCellX(e.getX());
+		int y = getCellY(e.getY());
 
 		if (gameState.isInBounds(x, y)) {
 			if (SwingUtilities.isLeftMouseButton(e) && !doubleClick) {
@@ -145,30 +169,27 @@ public class GameMouseController extends MouseAdapter {
 				}
 			} else if ((SwingUtilities.isMiddleMouseButton(e) && around) || doubleClick) {
 				if (GamePermissions.hasPermission(gameState, GamePermissions.AUTO_REVEAL)) {
-					if (gameState.canAutoReveal(x, y)) {
-						for (int dx = -1; dx <= 1; dx++) {
-							for (int dy = -1; dy <= 1; dy++) {
-								if (!(dx == 0 && dy == 0)) {
-									if (!gameState.isFlagged(x + dx, y + dy)) {
-										gameState.reveal(x + dx, y + dy);
-									}
-								}
-							}
-						}
-					}
+					gameState.autoReveal(x, y);
 				}
 			}
 		} else {
-			pos = getCell(new Int2(e.getX(), e.getY()), new Int2(10 + (gameState.getWidth() % 2 == 0 ? 0 : 10), 75));
-			x = pos.x();
-			y = pos.y();
+			x = getCellX(e.getX(), getFaceOffsetX());
+			y = getCellY(e.getY(), FACE_OFFSET_Y);
 
 			if (GamePermissions.hasPermission(gameState, GamePermissions.RESTART)) {
 				if ((x == Math.floor(gameState.getWidth() / 2.0) - 1 || x == Math.floor(gameState.getWidth() / 2.0)) && (y == -2 || y == -3)) {
+					boolean journaled = gameState.getJournal() != null;
+
 					gameState = new GameState(gameState.getWidth(), gameState.getHeight(), gameState.getMines(), gameState.getPortals(), gameState.getPermissions());
 					gameState.controller = this;
+
+					if (journaled) {
+						gameState.setJournal(new MoveJournal(gameState));
+					}
+
 					PweeperMain.gameState = gameState;
-					drawPanel.repaint();
+					setFrameScheduler(scheduler);
+					requestFrame();
 				}
 			}
 		}
@@ -187,20 +208,18 @@ public class GameMouseController extends MouseAdapter {
 		around = false;
 		gameState.setClicked(clicked);
 		gameState.setAround(false);
-		drawPanel.repaint();
+		repaint();
 	}
 
 	@Override
 	public void mouseMoved(MouseEvent e) {
-		Int2 pos = getCell(new Int2(e.getX(), e.getY()));
-		int x = pos.x();
-		int y = pos.y();
+		int x = getCellX(e.getX());
+		int y = getCellY(e.getY());
 
 		if (GamePermissions.hasPermission(gameState, GamePermissions.RESTART)) {
 			if (!gameState.isInBounds(x, y)) {
-				pos = getCell(new Int2(e.getX(), e.getY()), new Int2(10 + (gameState.getWidth() % 2 == 0 ? 0 : 10), 75));
-				x = pos.x();
-				y = pos.y();
+				x = getCellX(e.getX(), getFaceOffsetX());
+				y = getCellY(e.getY(), FACE_OFFSET_Y);
 			}
 		}
 
@@ -215,14 +234,13 @@ public class GameMouseController extends MouseAdapter {
 		gameState.setMouse(x, y);
 
 		gameState.setClicked(clicked);
-		drawPanel.repaint();
+		repaint();
 	}
 
 	@Override
 	public void mouseWheelMoved(MouseWheelEvent e) {
-		Int2 pos = getCell(new Int2(e.getX(), e.getY()));
-		int x = pos.x();
-		int y = pos.y();
+		int x = getCellX(e.getX());
+		int y = getCellY(e.getY());
 
 		boolean rolled = false;
 		if (GamePermissions.hasPermission(gameState, GamePermissions.MARK)) {
@@ -241,14 +259,15 @@ public class GameMouseController extends MouseAdapter {
 			if (viewport != null) {
 				viewport.pushMouse();
 
-				lastX = ((double) e.getX() / (double) getScalingRatio().x());
-				lastY = ((double) e.getY() / (double) getScalingRatio().y());
+				lastX = ((double) e.getX() / (double) getScalingRatioX());
+				lastY = ((double) e.getY() / (double) getScalingRatioY());
 
 				viewport.zoom(lastX, lastY, 1.1, (int) (e.getUnitsToScroll() / 2.0));
+				requestFrame();
 			}
 		}
 
-		drawPanel.repaint();
+		repaint();
 	}
 
 	public Int2 getCell(Int2 p) {
@@ -256,12 +275,32 @@ public class GameMouseController extends MouseAdapter {
 	}
 
 	public Int2 getCell(Int2 p, Int2 o) {
-		Vector2f worldSpace = getWorldSpace(p, o);
+		return new Int2(getCellX(p.x(), o.x()), getCellY(p.y(), o.y()));
+	}
+
+	// Hit testing without allocating, for the mouse events and the draw range of every frame
+	public int getCellX(int x) {
+		return getCellX(x, gameOffset.x());
+	}
+
+	public int getCellY(int y) {
+		return getCellY(y, gameOffset.y());
+	}
+
+	public int getCellX(int x, int offset) {
+		return (int) Math.floor(getWorldX(x, offset) / 20.0);
+	}
+
+	public int getCellY(int y, int offset) {
+		return (int) Math.floor(getWorldY(y, offset) / 20.0);
+	}
 
-		int x = (int) Math.floor(worldSpace.x / 20.0);
-		int y = (int) Math.floor(worldSpace.y / 20.0);
+	public float getWorldX(int x, int offset) {
+		return ((x - viewport.getTranslationX() * getScalingRatioX()) / viewport.getScaleX()) - offset;
+	}
 
-		return new Int2(x, y);
+	public float getWorldY(int y, int offset) {
+		return ((y - viewport.getTranslationY() * getScalingRatioY()) / viewport.getScaleY()) - offset;
 	}
 
 	public Vector2f getWorldSpace(Int2 p) {
@@ -269,15 +308,11 @@ public class GameMouseController extends MouseAdapter {
 	}
 
 	public Vector2f getWorldSpace(Int2 p, Int2 o) {
-		Matrix4f mat = viewport.composeMat();
-
-		Vector3f scale = new Vector3f();
-		scale = mat.getScale(scale);
-
-		Vector3f translation = new Vector3f();
-		translation = mat.getTranslation(translation);
+		return new Vector2f(getWorldX(p.x(), o.x()), getWorldY(p.y(), o.y()));
+	}
 
-		return new Vector2f((((p.x() - translation.x * getScalingRatio().x()) / scale.x) - o.x()), (((p.y() - translation.y * getScalingRatio().y()) / scale.y) - o.y()));
+	private int getFaceOffsetX() {
+		return 10 + (gameState.getWidth() % 2 == 0 ? 0 : 10);
 	}
 
 	public Int2 getGameOffset() {
@@ -289,10 +324,15 @@ public class GameMouseController extends MouseAdapter {
 	}
 
 	public Int2 getScalingRatio() {
-		int panelWidth = realGame ? drawPanel.getWidth() : clickRatio.x();
-		int panelHeight = realGame ? drawPanel.getHeight() : clickRatio.y();
+		return new Int2(getScalingRatioX(), getScalingRatioY());
+	}
+
+	public int getScalingRatioX() {
+		return realGame ? drawPanel.getWidth() : clickRatio.x();
+	}
 
-		return new Int2(panelWidth, panelHeight);
+	public int getScalingRatioY() {
+		return realGame ? drawPanel.getHeight() : clickRatio.y();
 	}
 
 }
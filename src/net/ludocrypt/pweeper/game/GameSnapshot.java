@@ -0,0 +1,199 @@
+package net.ludocrypt.pweeper.game;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Saves and restores a whole game in a versioned binary format. After a fixed header come the
+// mine, revealed and flagged grids as bitplanes, copied straight from their words, then the
+// portal pairs and each end's marks. Everything moves in bulk through one buffer, so a board
+// costs a little over three bits a cell on disk and nothing is allocated per cell.
+//
+// Header, big-endian: magic, version, width, height, mines, portals, permissions (ints), seed
+// (long), state bits (byte), elapsed nanos (long), portal pairs (int).
+public class GameSnapshot {
+	public static final int MAGIC = 0x50575350;
+	public static final int VERSION = 1;
+
+	private static final int HEADER_BYTES = 4 * 7 + 8 + 1 + 8 + 4;
+
+	private static final int LIVE = 1, STARTED = 2, WON = 4;
+
+	public static void write(GameState game, WritableByteChannel channel) throws IOException {
+		long[] mines = game.mineGrid.words();
+		long[] revealed = game.revealed.words();
+		long[] flagged = game.flagged.words();
+
+		PortalIndex portalIndex = game.getPortalIndex();
+		int ends = portalIndex.size() * 2;
+
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + mines.length * 8 * 3 + ends * 5);
+
+		buffer.putInt(MAGIC);
+		buffer.putInt(VERSION);
+		buffer.putInt(game.width);
+		buffer.putInt(game.height);
+		buffer.putInt(game.mines);
+		buffer.putInt(game.portals);
+		buffer.putInt(game.permissions);
+		buffer.putLong(game.getSeed());
+		buffer.put((byte) ((game.gameLive ? LIVE : 0) | (game.officiallyStarted ? STARTED : 0) | (game.isWon() ? WON : 0)));
+		buffer.putLong(game.getElapsedNanos());
+		buffer.putInt(portalIndex.size());
+
+		putWords(buffer, mines);
+		putWords(buffer, revealed);
+		putWords(buffer, flagged);
+
+		for (int e = 0; e < ends; e++) {
+			buffer.putInt(portalIndex.getCell(e));
+		}
+
+		for (int e = 0; e < ends; e++) {
+			buffer.put((byte) portalIndex.getMarks(e));
+		}
+
+		buffer.flip();
+
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	public static GameState read(ReadableByteChannel channel) throws IOException {
+		ByteBuffer header = readHeader(channel);
+
+		GameState game = new GameState(header.getInt(8), header.getInt(12), header.getInt(16), header.getInt(20), header.getInt(24), header.getLong(28), false);
+		readBody(channel, header, game);
+
+		return game;
+	}
+
+	// Restores into a game of the same size rather than a new one, so whatever draws the game can
+	// keep its caches and only redraw. Everything in the snapshot is restored, seed and
+	// permissions included.
+	public static void read(ReadableByteChannel channel, GameState game) throws IOException {
+		ByteBuffer header = readHeader(channel);
+
+		if (header.getInt(8) != game.width || header.getInt(12) != game.height) {
+			throw new IOException("Snapshot is for a " + header.getInt(8) + "x" + header.getInt(12) + " board");
+		}
+
+		game.mines = header.getInt(16);
+		game.portals = header.getInt(20);
+		game.permissions = header.getInt(24);
+		game.setSeed(header.getLong(28));
+		game.getPortalIndex().clear();
+
+		readBody(channel, header, game);
+	}
+
+	private static ByteBuffer readHeader(ReadableByteChannel channel) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+		readFully(channel, header);
+
+		if (header.getInt() != MAGIC) {
+			throw new IOException("Not a game snapshot");
+		}
+
+		int version = header.getInt();
+
+		if (version != VERSION) {
+			throw new IOException("Unsupported snapshot version " + version);
+		}
+
+		int width = header.getInt();
+		int height = header.getInt();
+		int pairs = header.getInt(45);
+
+		int mines = header.getInt(16);
+
+		if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE || pairs < 0 || (long) pairs * 2 > (long) width * height || mines < 0 || mines > GameState.getMaxMines(width, height)) {
+			throw new IOException("Corrupt snapshot header");
+		}
+
+		return header;
+	}
+
+	private static void readBody(ReadableByteChannel channel, ByteBuffer header, GameState game) throws IOException {
+		int width = game.width;
+		int height = game.height;
+		int state = header.get(36);
+		long elapsedNanos = header.getLong(37);
+		int pairs = header.getInt(45);
+
+		ByteBuffer body = ByteBuffer.allocate(game.mineGrid.words().length * 8 * 3 + pairs * 10);
+		readFully(channel, body);
+
+		getWords(body, game.mineGrid.words(), width * height);
+		getWords(body, game.revealed.words(), width * height);
+		getWords(body, game.flagged.words(), width * height);
+
+		PortalIndex portalIndex = game.getPortalIndex();
+		portalIndex.ensureCapacity(pairs);
+
+		for (int p = 0; p < pairs; p++) {
+			int a = body.getInt();
+			int b = body.getInt();
+
+			if (a < 0 || b < 0 || a >= width * height || b >= width * height || a == b) {
+				throw new IOException("Corrupt snapshot portal");
+			}
+
+			if (portalIndex.contains(a % width, a / width) || portalIndex.contains(b % width, b / width)) {
+				throw new IOException("Snapshot has two portals on one cell");
+			}
+
+			portalIndex.put(a % width, a / width, b % width, b / width);
+		}
+
+		for (int e = 0; e < pairs * 2; e++) {
+			portalIndex.setMarks(e, body.get() & 0xFF);
+		}
+
+		game.restored((state & LIVE) != 0, (state & STARTED) != 0, (state & WON) != 0, elapsedNanos);
+	}
+
+	public static void save(GameState game, Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			write(game, channel);
+		}
+	}
+
+	public static GameState load(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return read(channel);
+		}
+	}
+
+	private static void putWords(ByteBuffer buffer, long[] words) {
+		buffer.asLongBuffer().put(words);
+		buffer.position(buffer.position() + words.length * 8);
+	}
+
+	// Bits past the last cell are cleared, so a corrupt file cannot throw off the counts
+	private static void getWords(ByteBuffer buffer, long[] words, int cells) {
+		buffer.asLongBuffer().get(words);
+		buffer.position(buffer.position() + words.length * 8);
+
+		if (cells % 64 != 0) {
+			words[words.length - 1] &= (1L << cells) - 1;
+		}
+	}
+
+	private static void readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				throw new EOFException("Snapshot ended early");
+			}
+		}
+
+		buffer.flip();
+	}
+
+}
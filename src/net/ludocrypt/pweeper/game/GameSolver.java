@@ -1,7 +1,14 @@
 package net.ludocrypt.pweeper.game;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 import net.ludocrypt.pweeper.game.GameState.Int2;
 
@@ -11,13 +18,974 @@ public class GameSolver {
 
     double[][] probabilities;
 
+    private boolean exact;
+
+    // Roughly how many tally entries a component may take to count before the solver drops
+    // one of its numbers and counts the rest instead, leaving the solve inexact. Unlimited
+    // unless a caller asks, so solves are exact however long they take.
+    private long maxWork = Long.MAX_VALUE;
+
+    // How much one sweep of an exact solve may take before its component is split on a step
+    long sweepWork = FrontierComponent.MAX_WORK;
+
+    // Steps tried as the one to split a component on, and how many counts the pieces already
+    // counted in one solve may hold before they are forgotten
+    private static final int CANDIDATES = 8;
+    private static final long MAX_KNOWN = 1 << 24;
+
+    private final Map<Set<Constraint>, CellCounts> known = new HashMap<Set<Constraint>, CellCounts>();
+    private long knownSize;
+
+    // Runs the components, and the larger sweeps inside them, as fork/join tasks when set.
+    // The results are the same either way.
+    private final ForkJoinPool pool;
+
     public GameSolver(GameState gameState) {
+        this(gameState, null);
+    }
+
+    public GameSolver(GameState gameState, ForkJoinPool pool) {
         this.gameState = gameState;
+        this.pool = pool;
         this.probabilities = new double[gameState.width][gameState.height];
     }
 
+    // Fills probabilities with the chance of each cell being a mine, given every revealed
+    // number. The portal layout is taken as known, so portal cells are never mines and a
+    // number next to a portal also constrains the cells around the other end.
     public void solve() {
+        GameEvents.Solve event = new GameEvents.Solve();
+        event.begin();
+
+        solve(event);
+
+        event.end();
+
+        if (event.shouldCommit()) {
+            event.width = gameState.width;
+            event.height = gameState.height;
+            event.exact = exact;
+            event.commit();
+        }
+    }
+
+    private void solve(GameEvents.Solve event) {
+        int width = gameState.width;
+        int height = gameState.height;
+
+        for (double[] column : probabilities) {
+            Arrays.fill(column, 0);
+        }
+
+        exact = true;
+
+        int[] varOf = new int[width * height];
+        Arrays.fill(varOf, -1);
+
+        int[] varCells = new int[16];
+        int vars = 0;
+
+        List<Constraint> constraints = new ArrayList<Constraint>();
+
+        int[] terms = new int[72];
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (!gameState.isRevealed(x, y) || gameState.isPortal(x, y) || gameState.isMine(x, y)) {
+                    continue;
+                }
+
+                int n = collectTerms(x, y, terms);
+
+                if (n == 0) {
+                    continue;
+                }
+
+                Arrays.sort(terms, 0, n);
+
+                int[] cells = new int[n];
+                int[] coefs = new int[n];
+                int size = 0;
+
+                for (int i = 0; i < n; i++) {
+                    if (size > 0 && cells[size - 1] == terms[i]) {
+                        coefs[size - 1]++;
+                    } else {
+                        cells[size] = terms[i];
+                        coefs[size] = 1;
+                        size++;
+                    }
+                }
+
+                int[] ids = new int[size];
+
+                for (int i = 0; i < size; i++) {
+                    if (varOf[cells[i]] < 0) {
+                        if (vars == varCells.length) {
+                            varCells = Arrays.copyOf(varCells, vars * 2);
+                        }
+
+                        varCells[vars] = cells[i];
+                        varOf[cells[i]] = vars++;
+                    }
+
+                    ids[i] = varOf[cells[i]];
+
+                    // Keep the variables in ascending order, simplify() walks them in step
+                    for (int j = i; j > 0 && ids[j - 1] > ids[j]; j--) {
+                        int id = ids[j];
+                        ids[j] = ids[j - 1];
+                        ids[j - 1] = id;
+
+                        int coef = coefs[j];
+                        coefs[j] = coefs[j - 1];
+                        coefs[j - 1] = coef;
+                    }
+                }
+
+                constraints.add(new Constraint(ids, Arrays.copyOf(coefs, size), gameState.getSurrounding(x, y)));
+            }
+        }
+
+        event.variables = vars;
+        event.constraints = constraints.size();
+
+        int[] fixed = propagate(vars, constraints);
+
+        if (fixed == null) {
+            return;
+        }
+
+        int mines = gameState.mines;
+
+        for (int v = 0; v < vars; v++) {
+            if (fixed[v] >= 0) {
+                int cell = varCells[v];
+                probabilities[cell % width][cell / width] = fixed[v];
+                mines -= fixed[v];
+            }
+        }
+
+        List<Constraint> open = simplify(reduce(constraints, fixed), vars);
+        List<CellCounts> components = maxWork == Long.MAX_VALUE ? count(vars, open, Integer.MAX_VALUE) : relax(vars, open);
+
+        known.clear();
+        knownSize = 0;
+
+        event.components = components.size();
+
+        // Cells no remaining number touches can hold any of the leftover mines equally
+        boolean[] counted = new boolean[width * height];
+
+        for (CellCounts component : components) {
+            for (int v : component.vars) {
+                counted[varCells[v]] = true;
+            }
+        }
+
+        int floating = 0;
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int v = varOf[y * width + x];
+
+                if (isUnknown(x, y) && !counted[y * width + x] && (v < 0 || fixed[v] < 0)) {
+                    floating++;
+                }
+            }
+        }
+
+        double floatingProbability = combine(components, floating, mines);
+
+        if (Double.isNaN(floatingProbability)) {
+            return;
+        }
+
+        for (CellCounts component : components) {
+            for (int i = 0; i < component.vars.length; i++) {
+                int cell = varCells[component.vars[i]];
+                probabilities[cell % width][cell / width] = component.probabilities[i];
+            }
+        }
+
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int v = varOf[y * width + x];
+
+                if (isUnknown(x, y) && !counted[y * width + x] && (v < 0 || fixed[v] < 0)) {
+                    probabilities[x][y] = floatingProbability;
+                }
+            }
+        }
+    }
+
+    // Counts every component exactly. One that would take a sweep over sweepWork, or hold more
+    // than limit numbers open, is split on one of its steps instead, and what is left counted
+    // once for each number of mines the step can hold. What is left is only swept if it is
+    // narrower than the whole, as it would mostly get stuck the same way again. Splits leave
+    // the pieces far from the step the same every time, so those are only counted once.
+    private List<CellCounts> count(int vars, List<Constraint> constraints, int limit) {
+        List<FrontierComponent> components = split(vars, constraints, limit);
+        List<CellCounts> parts = new ArrayList<CellCounts>();
+        List<FrontierComponent> fresh = new ArrayList<FrontierComponent>();
+
+        for (FrontierComponent component : components) {
+            CellCounts part = known.get(new HashSet<Constraint>(component.constraints));
+
+            if (part != null) {
+                parts.add(part);
+            } else {
+                fresh.add(component);
+            }
+        }
+
+        boolean[] swept = enumerate(fresh, sweepWork);
+
+        for (int i = 0; i < fresh.size(); i++) {
+            CellCounts part = swept[i] ? fresh.get(i).cellCounts() : branch(vars, fresh.get(i));
+
+            if (knownSize > MAX_KNOWN) {
+                known.clear();
+                knownSize = 0;
+            }
+
+            known.put(new HashSet<Constraint>(fresh.get(i).constraints), part);
+            knownSize += (long) part.vars.length * part.counts.length;
+            parts.add(part);
+        }
+
+        return parts;
+    }
+
+    private CellCounts branch(int vars, FrontierComponent component) {
+        int n = component.vars.length;
+        int[] step = narrowest(vars, component);
+        int size = step.length;
+
+        int[] localOf = new int[vars];
+        Arrays.fill(localOf, -1);
+
+        for (int i = 0; i < n; i++) {
+            localOf[component.vars[i]] = i;
+        }
+
+        double[] counts = new double[n + 1];
+        double[][] mines = new double[n][n + 1];
+
+        double ways = 1;
+
+        // The step's cells are interchangeable, so only how many of them are mines matters
+        for (int k = 0; k <= size; ways = ways * (size - k) / (k + 1), k++) {
+            List<Constraint> placed = place(vars, component.constraints, step, k);
+            int[] fixed = new int[vars];
+            Arrays.fill(fixed, -1);
+
+            if (placed == null || !propagate(fixed, placed)) {
+                continue;
+            }
+
+            int limit = component.width > component.limit ? Integer.MAX_VALUE : component.width - 1;
+            CellCounts rest = CellCounts.join(count(vars, simplify(reduce(placed, fixed), vars), limit));
+
+            // Every cell still open is in what was left, the settled mines shift its counts
+            int ones = k;
+
+            for (int v : component.vars) {
+                ones += fixed[v] == 1 ? 1 : 0;
+            }
+
+            addInto(counts, rest.counts, ones, ways);
+
+            for (int r = 0; r < rest.vars.length; r++) {
+                addInto(mines[localOf[rest.vars[r]]], rest.mines[r], ones, ways);
+            }
+
+            for (int i = 0; i < n; i++) {
+                if (fixed[component.vars[i]] == 1) {
+                    addInto(mines[i], rest.counts, ones, ways);
+                }
+            }
+
+            for (int v : step) {
+                addInto(mines[localOf[v]], rest.counts, ones, ways * k / size);
+            }
+        }
+
+        return new CellCounts(component.vars, counts, mines);
+    }
+
+    // Of the component's busiest steps, the one that leaves the narrowest pieces once its
+    // cells are taken out
+    private static int[] narrowest(int vars, FrontierComponent component) {
+        int[] narrowest = null;
+        int narrowestWidth = Integer.MAX_VALUE;
+
+        for (int[] step : component.busiest(CANDIDATES)) {
+            boolean[] inStep = new boolean[vars];
+
+            for (int v : step) {
+                inStep[v] = true;
+            }
+
+            List<Constraint> rest = new ArrayList<Constraint>();
+
+            for (Constraint constraint : component.constraints) {
+                int[] ids = new int[constraint.vars.length];
+                int[] coefs = new int[constraint.vars.length];
+                int size = 0;
+
+                for (int i = 0; i < constraint.vars.length; i++) {
+                    if (!inStep[constraint.vars[i]]) {
+                        ids[size] = constraint.vars[i];
+                        coefs[size] = constraint.coefs[i];
+                        size++;
+                    }
+                }
+
+                if (size > 0) {
+                    rest.add(new Constraint(Arrays.copyOf(ids, size), Arrays.copyOf(coefs, size), constraint.value));
+                }
+            }
+
+            int width = 0;
+
+            for (FrontierComponent piece : split(vars, rest, Integer.MAX_VALUE)) {
+                width = Math.max(width, piece.width);
+            }
+
+            if (width < narrowestWidth) {
+                narrowest = step;
+                narrowestWidth = width;
+            }
+        }
+
+        return narrowest;
+    }
+
+    // The constraints with k mines among the step's cells, which every constraint either
+    // counts all of with the same coefficient or none of, or null if that is too many
+    private static List<Constraint> place(int vars, List<Constraint> constraints, int[] step, int k) {
+        boolean[] inStep = new boolean[vars];
+
+        for (int v : step) {
+            inStep[v] = true;
+        }
+
+        List<Constraint> placed = new ArrayList<Constraint>();
+
+        for (Constraint constraint : constraints) {
+            int[] ids = new int[constraint.vars.length];
+            int[] coefs = new int[constraint.vars.length];
+            int size = 0, coef = 0;
+
+            for (int i = 0; i < constraint.vars.length; i++) {
+                if (inStep[constraint.vars[i]]) {
+                    coef = constraint.coefs[i];
+                } else {
+                    ids[size] = constraint.vars[i];
+                    coefs[size] = constraint.coefs[i];
+                    size++;
+                }
+            }
+
+            int value = constraint.value - coef * k;
+
+            if (size == constraint.vars.length) {
+                placed.add(constraint);
+            } else if (value < 0 || size == 0 && value != 0) {
+                return null;
+            } else if (size > 0) {
+                placed.add(new Constraint(Arrays.copyOf(ids, size), Arrays.copyOf(coefs, size), value));
+            }
+        }
+
+        return placed;
+    }
+
+    // Drops the number that holds the sweep open longest from each component that goes over
+    // maxWork, and counts what is left, asking for a narrower sweep if this one was already
+    // within the limit
+    private List<CellCounts> relax(int vars, List<Constraint> constraints) {
+        List<CellCounts> components = new ArrayList<CellCounts>();
+        List<FrontierComponent> pending = split(vars, constraints, Integer.MAX_VALUE);
+
+        while (!pending.isEmpty()) {
+            boolean[] counted = enumerate(pending, maxWork);
+            List<FrontierComponent> next = new ArrayList<FrontierComponent>();
+
+            for (int i = 0; i < pending.size(); i++) {
+                FrontierComponent component = pending.get(i);
+
+                if (counted[i]) {
+                    components.add(component.cellCounts());
+                } else {
+                    List<Constraint> relaxed = new ArrayList<Constraint>(component.constraints);
+                    relaxed.remove(component.widest());
+                    next.addAll(split(vars, relaxed, Math.min(component.limit, component.stuck - 1)));
+                    exact = false;
+                }
+            }
+
+            pending = next;
+        }
+
+        return components;
+    }
+
+    private static void addInto(double[] out, double[] values, int shift, double weight) {
+        for (int k = 0; k < values.length; k++) {
+            out[k + shift] += values[k] * weight;
+        }
+    }
+
+    private boolean[] enumerate(List<FrontierComponent> components, long maxWork) {
+        boolean[] counted = new boolean[components.size()];
+
+        if (pool == null) {
+            for (int i = 0; i < components.size(); i++) {
+                counted[i] = components.get(i).enumerate(false, maxWork);
+            }
+
+            return counted;
+        }
+
+        List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+
+        for (int i = 0; i < components.size(); i++) {
+            int index = i;
+
+            tasks.add(new RecursiveAction() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected void compute() {
+                    counted[index] = components.get(index).enumerate(true, maxWork);
+                }
+            });
+        }
+
+        pool.invoke(new RecursiveAction() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+
+        return counted;
+    }
+
+    // False if the last solve had to drop numbers to finish, so its probabilities ignore them.
+    // Only ever false with a work budget.
+    public boolean isExact() {
+        return exact;
+    }
+
+    public long getMaxWork() {
+        return maxWork;
+    }
+
+    public void setMaxWork(long maxWork) {
+        this.maxWork = maxWork;
+    }
+
+    public double getProbability(int x, int y) {
+        return gameState.isInBounds(x, y) ? probabilities[x][y] : 0;
+    }
+
+    private boolean isUnknown(int x, int y) {
+        return !gameState.isRevealed(x, y) && !gameState.isPortal(x, y);
+    }
+
+    // Lists the unknown cells a revealed number counts, once per time they are counted
+    private int collectTerms(int x, int y, int[] terms) {
+        PortalIndex portalIndex = gameState.getPortalIndex();
+
+        int n = 0;
+
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dy = -1; dy <= 1; dy++) {
+                if (dx == 0 && dy == 0 || !gameState.isInBounds(x + dx, y + dy)) {
+                    continue;
+                }
+
+                int e = portalIndex.find(x + dx, y + dy);
+
+                if (e >= 0) {
+                    int p = PortalIndex.partner(e);
+                    int px = portalIndex.getX(p);
+                    int py = portalIndex.getY(p);
+
+                    for (int ddx = -1; ddx <= 1; ddx++) {
+                        for (int ddy = -1; ddy <= 1; ddy++) {
+                            if (!(ddx == 0 && ddy == 0) && gameState.isInBounds(px + ddx, py + ddy) && isUnknown(px + ddx, py + ddy)) {
+                                terms[n++] = (py + ddy) * gameState.width + px + ddx;
+                            }
+                        }
+                    }
+                } else if (isUnknown(x + dx, y + dy)) {
+                    terms[n++] = (y + dy) * gameState.width + x + dx;
+                }
+            }
+        }
+
+        return n;
+    }
+
+    // Settles every cell that a single number, or the difference between two numbers where
+    // one covers a subset of the other's cells, already decides. Returns 0 or 1 per
+    // variable for settled cells and -1 otherwise, or null if the numbers contradict.
+    private static int[] propagate(int vars, List<Constraint> constraints) {
+        int[] fixed = new int[vars];
+        Arrays.fill(fixed, -1);
+
+        return propagate(fixed, constraints) ? fixed : null;
+    }
+
+    // The same, carrying on from cells already settled in fixed. False if the numbers
+    // contradict.
+    private static boolean propagate(int[] fixed, List<Constraint> constraints) {
+        int vars = fixed.length;
+        int m = constraints.size();
 
+        int[] degree = new int[vars];
+
+        for (Constraint constraint : constraints) {
+            for (int v : constraint.vars) {
+                degree[v]++;
+            }
+        }
+
+        int[][] touching = new int[vars][];
+
+        for (int v = 0; v < vars; v++) {
+            touching[v] = new int[degree[v]];
+            degree[v] = 0;
+        }
+
+        for (int c = 0; c < m; c++) {
+            for (int v : constraints.get(c).vars) {
+                touching[v][degree[v]++] = c;
+            }
+        }
+
+        int[] queue = new int[m];
+        boolean[] queued = new boolean[m];
+        int head = 0, size = m;
+
+        for (int c = 0; c < m; c++) {
+            queue[c] = c;
+            queued[c] = true;
+        }
+
+        int[] coefOf = new int[vars];
+
+        while (size > 0) {
+            int a = queue[head];
+            head = (head + 1) % m;
+            size--;
+            queued[a] = false;
+
+            Constraint constraint = constraints.get(a);
+
+            int need = need(constraint, fixed);
+            int room = room(constraint, fixed);
+
+            if (need < 0 || need > room) {
+                return false;
+            }
+
+            Constraint settled = null;
+
+            if (room > 0 && (need == 0 || need == room)) {
+                for (int v : constraint.vars) {
+                    if (fixed[v] < 0) {
+                        fixed[v] = need == 0 ? 0 : 1;
+                    }
+                }
+
+                settled = constraint;
+            } else if (room > 0) {
+                for (int i = 0; i < constraint.vars.length; i++) {
+                    if (fixed[constraint.vars[i]] < 0) {
+                        coefOf[constraint.vars[i]] = constraint.coefs[i];
+                    }
+                }
+
+                for (int j = 0; j < constraint.vars.length && settled == null; j++) {
+                    if (fixed[constraint.vars[j]] >= 0) {
+                        continue;
+                    }
+
+                    for (int b : touching[constraint.vars[j]]) {
+                        if (b != a && settleDifference(constraints.get(b), need, room, coefOf, fixed)) {
+                            settled = constraints.get(b);
+                            break;
+                        }
+                    }
+                }
+
+                for (int v : constraint.vars) {
+                    coefOf[v] = 0;
+                }
+            }
+
+            if (settled == null) {
+                continue;
+            }
+
+            // Anything touching the settled cells may now decide more
+            for (int v : settled.vars) {
+                for (int b : touching[v]) {
+                    if (!queued[b]) {
+                        queued[b] = true;
+                        queue[(head + size++) % m] = b;
+                    }
+                }
+            }
+        }
+
+        return true;
+    }
+
+    // If the open cells of a number (with coefficients in coefOf) are a subset of b's, the
+    // cells b has beyond it hold exactly b's need minus its need. Settles them when that is
+    // none or all of them.
+    private static boolean settleDifference(Constraint b, int needA, int roomA, int[] coefOf, int[] fixed) {
+        int covered = 0;
+
+        for (int i = 0; i < b.vars.length; i++) {
+            int v = b.vars[i];
+
+            if (fixed[v] < 0 && coefOf[v] > 0) {
+                if (b.coefs[i] < coefOf[v]) {
+                    return false;
+                }
+
+                covered += coefOf[v];
+            }
+        }
+
+        if (covered != roomA) {
+            return false;
+        }
+
+        int need = need(b, fixed) - needA;
+        int room = room(b, fixed) - roomA;
+
+        if (room == 0 || need != 0 && need != room) {
+            return false;
+        }
+
+        boolean changed = false;
+
+        for (int i = 0; i < b.vars.length; i++) {
+            int v = b.vars[i];
+
+            if (fixed[v] < 0 && b.coefs[i] > coefOf[v]) {
+                fixed[v] = need == 0 ? 0 : 1;
+                changed = true;
+            }
+        }
+
+        return changed;
+    }
+
+    private static int need(Constraint constraint, int[] fixed) {
+        int need = constraint.value;
+
+        for (int i = 0; i < constraint.vars.length; i++) {
+            if (fixed[constraint.vars[i]] == 1) {
+                need -= constraint.coefs[i];
+            }
+        }
+
+        return need;
+    }
+
+    private static int room(Constraint constraint, int[] fixed) {
+        int room = 0;
+
+        for (int i = 0; i < constraint.vars.length; i++) {
+            if (fixed[constraint.vars[i]] < 0) {
+                room += constraint.coefs[i];
+            }
+        }
+
+        return room;
+    }
+
+    // The constraints over the cells propagate left open, with the settled mines taken off
+    private static List<Constraint> reduce(List<Constraint> constraints, int[] fixed) {
+        List<Constraint> reduced = new ArrayList<Constraint>();
+
+        for (Constraint constraint : constraints) {
+            int room = room(constraint, fixed);
+
+            if (room == 0) {
+                continue;
+            }
+
+            int[] ids = new int[constraint.vars.length];
+            int[] coefs = new int[constraint.vars.length];
+            int size = 0;
+
+            for (int i = 0; i < constraint.vars.length; i++) {
+                if (fixed[constraint.vars[i]] < 0) {
+                    ids[size] = constraint.vars[i];
+                    coefs[size] = constraint.coefs[i];
+                    size++;
+                }
+            }
+
+            reduced.add(new Constraint(Arrays.copyOf(ids, size), Arrays.copyOf(coefs, size), need(constraint, fixed)));
+        }
+
+        return reduced;
+    }
+
+    // Wherever one number's cells are all counted by another, takes it out of the other:
+    // the same solutions, but numbers that overlap less and so split and sweep more easily
+    private static List<Constraint> simplify(List<Constraint> constraints, int vars) {
+        List<Constraint> simplified = new ArrayList<Constraint>(constraints);
+        boolean changed = true;
+
+        while (changed) {
+            changed = false;
+
+            List<List<Integer>> touching = new ArrayList<List<Integer>>();
+
+            for (int v = 0; v < vars; v++) {
+                touching.add(null);
+            }
+
+            for (int c = 0; c < simplified.size(); c++) {
+                for (int v : simplified.get(c).vars) {
+                    if (touching.get(v) == null) {
+                        touching.set(v, new ArrayList<Integer>());
+                    }
+
+                    touching.get(v).add(c);
+                }
+            }
+
+            for (int a = 0; a < simplified.size(); a++) {
+                Constraint small = simplified.get(a);
+
+                if (small == null) {
+                    continue;
+                }
+
+                for (int b : touching.get(small.vars[0])) {
+                    Constraint large = simplified.get(b);
+
+                    if (b == a || large == null || large.vars.length < small.vars.length || !covers(large, small)) {
+                        continue;
+                    }
+
+                    simplified.set(b, subtract(large, small));
+                    changed = true;
+                }
+            }
+
+            simplified.removeIf(c -> c == null);
+        }
+
+        return simplified;
+    }
+
+    private static boolean covers(Constraint large, Constraint small) {
+        int j = 0;
+
+        for (int i = 0; i < small.vars.length; i++) {
+            while (j < large.vars.length && large.vars[j] < small.vars[i]) {
+                j++;
+            }
+
+            if (j == large.vars.length || large.vars[j] != small.vars[i] || large.coefs[j] < small.coefs[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    // large minus small, or null if nothing is left
+    private static Constraint subtract(Constraint large, Constraint small) {
+        int[] ids = new int[large.vars.length];
+        int[] coefs = new int[large.vars.length];
+        int size = 0;
+        int j = 0;
+
+        for (int i = 0; i < large.vars.length; i++) {
+            int coef = large.coefs[i];
+
+            if (j < small.vars.length && small.vars[j] == large.vars[i]) {
+                coef -= small.coefs[j++];
+            }
+
+            if (coef > 0) {
+                ids[size] = large.vars[i];
+                coefs[size] = coef;
+                size++;
+            }
+        }
+
+        if (size == 0) {
+            return null;
+        }
+
+        return new Constraint(Arrays.copyOf(ids, size), Arrays.copyOf(coefs, size), large.value - small.value);
+    }
+
+    private static List<FrontierComponent> split(int vars, List<Constraint> constraints, int limit) {
+        int[] parent = new int[vars];
+
+        for (int i = 0; i < vars; i++) {
+            parent[i] = i;
+        }
+
+        for (Constraint constraint : constraints) {
+            for (int i = 1; i < constraint.vars.length; i++) {
+                int a = find(parent, constraint.vars[0]);
+                int b = find(parent, constraint.vars[i]);
+
+                if (a != b) {
+                    parent[a] = b;
+                }
+            }
+        }
+
+        int[] componentOf = new int[vars];
+        Arrays.fill(componentOf, -1);
+
+        List<List<Constraint>> grouped = new ArrayList<List<Constraint>>();
+
+        for (Constraint constraint : constraints) {
+            int root = find(parent, constraint.vars[0]);
+
+            if (componentOf[root] < 0) {
+                componentOf[root] = grouped.size();
+                grouped.add(new ArrayList<Constraint>());
+            }
+
+            grouped.get(componentOf[root]).add(constraint);
+        }
+
+        List<FrontierComponent> components = new ArrayList<FrontierComponent>();
+        int[] localOf = new int[vars];
+        Arrays.fill(localOf, -1);
+
+        for (List<Constraint> group : grouped) {
+            components.add(new FrontierComponent(group, localOf, limit));
+        }
+
+        return components;
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+
+        return i;
+    }
+
+    // Weights every way of splitting the remaining mines between the components and the
+    // cells no number touches, then turns the component counts into probabilities.
+    // Returns the probability for an untouched cell, or NaN if no arrangement fits.
+    private static double combine(List<CellCounts> components, int floating, int mines) {
+        int n = components.size();
+
+        double[][] prefix = new double[n + 1][];
+        double[][] suffix = new double[n + 1][];
+
+        prefix[0] = new double[] { 1 };
+        suffix[n] = new double[] { 1 };
+
+        for (int i = 0; i < n; i++) {
+            prefix[i + 1] = CellCounts.convolve(prefix[i], components.get(i).scaledCounts());
+        }
+
+        for (int i = n - 1; i >= 0; i--) {
+            suffix[i] = CellCounts.convolve(components.get(i).scaledCounts(), suffix[i + 1]);
+        }
+
+        double[] total = prefix[n];
+        double[] weight = binomialWeights(floating, mines, total.length);
+
+        double z = 0;
+        double outside = 0;
+
+        for (int t = 0; t < total.length; t++) {
+            z += total[t] * weight[t];
+            outside += total[t] * weight[t] * (mines - t);
+        }
+
+        if (z == 0 || Double.isNaN(z)) {
+            return Double.NaN;
+        }
+
+        for (int i = 0; i < n; i++) {
+            CellCounts component = components.get(i);
+            double[] others = CellCounts.convolve(prefix[i], suffix[i + 1]);
+
+            int k = component.counts.length;
+            double[] g = new double[k];
+
+            for (int m = 0; m < k; m++) {
+                for (int s = 0; s < others.length && s + m < weight.length; s++) {
+                    g[m] += others[s] * weight[s + m];
+                }
+            }
+
+            component.resolve(g, z);
+        }
+
+        return floating == 0 ? 0 : outside / z / floating;
+    }
+
+    // C(floating, mines - t) for each frontier total t, scaled so the largest is 1
+    private static double[] binomialWeights(int floating, int mines, int length) {
+        double[] log = new double[length];
+        double max = Double.NEGATIVE_INFINITY;
+
+        for (int t = 0; t < length; t++) {
+            int r = mines - t;
+
+            if (r < 0 || r > floating) {
+                log[t] = Double.NEGATIVE_INFINITY;
+            } else if (t > 0 && log[t - 1] != Double.NEGATIVE_INFINITY) {
+                // C(u, r) / C(u, r + 1) = (r + 1) / (u - r)
+                log[t] = log[t - 1] + Math.log(r + 1) - Math.log(floating - r);
+            } else {
+                log[t] = logBinomial(floating, r);
+            }
+
+            max = Math.max(max, log[t]);
+        }
+
+        double[] weight = new double[length];
+
+        for (int t = 0; t < length; t++) {
+            weight[t] = log[t] == Double.NEGATIVE_INFINITY ? 0 : Math.exp(log[t] - max);
+        }
+
+        return weight;
+    }
+
+    private static double logBinomial(int n, int k) {
+        k = Math.min(k, n - k);
+
+        double sum = 0;
+
+        for (int i = 0; i < k; i++) {
+            sum += Math.log(n - i) - Math.log(i + 1);
+        }
+
+        return sum;
     }
 
     public boolean validate() {
@@ -25,6 +993,9 @@ public class GameSolver {
     }
 
     public List<Int2> getInvalidCells() {
+        GameEvents.BoardScan event = new GameEvents.BoardScan();
+        event.begin();
+
         List<Int2> invalid = new ArrayList<Int2>();
 
         for (int x = 0; x < gameState.width; x++) {
@@ -37,7 +1008,42 @@ public class GameSolver {
             }
         }
 
+        event.end();
+
+        if (event.shouldCommit()) {
+            event.operation = "Invalid cells";
+            event.cells = gameState.width * gameState.height;
+            event.commit();
+        }
+
         return invalid;
     }
 
+    static class Constraint {
+        final int[] vars;
+        final int[] coefs;
+        final int value;
+
+        Constraint(int[] vars, int[] coefs, int value) {
+            this.vars = vars;
+            this.coefs = coefs;
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Constraint)) {
+                return false;
+            }
+
+            Constraint other = (Constraint) o;
+            return value == other.value && Arrays.equals(vars, other.vars) && Arrays.equals(coefs, other.coefs);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * Arrays.hashCode(vars) + Arrays.hashCode(coefs)) + value;
+        }
+    }
+
 }
@@ -3,47 +3,193 @@ package net.ludocrypt.pweeper.game;
 import java.awt.Color;
 import java.awt.Graphics2D;
 import java.awt.image.BufferedImage;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Random;
-import java.util.stream.Collectors;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 import net.ludocrypt.pweeper.PweeperMain;
+import net.ludocrypt.pweeper.render.BoardOverview;
+import net.ludocrypt.pweeper.render.DirtyCells;
+import net.ludocrypt.pweeper.render.Sprite;
+import net.ludocrypt.pweeper.render.TileCache;
 
 public class GameState {
+	private static final Color LINE_COLOR = new Color(188, 164, 180);
+
 	public int width, height, mines, portals, permissions;
-	public boolean[][] mineGrid, revealed, flagged;
-	public int[][] portalMarks;
-	public Map<Int2, Int2> portalsMap;
 
-	public long startTime;
-	public long endTime;
+	// Every board this game generates comes from it, so the same seed and the same first click
+	// always give the same mines and portals
+	private long seed;
+	protected BitGrid mineGrid, revealed, flagged;
+	protected PortalIndex portalIndex;
+	protected NeighborCounts neighborCounts;
+	private boolean countsStale;
+
+	// Records the player's moves when set, and is left null for replays and bots
+	private MoveJournal journal;
+
+	// From System.nanoTime, so the clock runs whether or not anything is drawn and never jumps
+	// with the wall clock. The end is only set once the game is over.
+	public long startNanos;
+	public long endNanos;
+	// Held at endNanos while a replay is paused on a move, whether or not the game is over
+	private boolean clockStopped;
 	public boolean gameLive;
 	public boolean officiallyStarted;
 
+	private int totalFlags, totalRevealed, correctFlags;
+	private boolean won;
+
 	private int mouseX = -10, mouseY = -10;
 	private boolean around;
 	private boolean clicked;
 
 	protected GameMouseController controller;
 
+	protected DirtyCells dirty;
+	private BufferedImage drawnCanvas;
+	private boolean drawnRealGame;
+	private int drawnFlagsLeft, drawnFace;
+	private long drawnSeconds;
+	private int drawnX0, drawnY0, drawnX1, drawnY1;
+
+	private boolean linesStale;
+	private boolean[] linesShown = new boolean[0];
+	private int[] shownLines = new int[0];
+	private int shownCount;
+	private int[] heldCells = new int[0];
+
+	private TileCache drawnTiles;
+	private BoardOverview drawnOverview;
+
+	private Runnable changeListener;
+
+	// Running totals of the board drawing done, for frame stats
+	private long cellsDrawn, spritesDrawn;
+
+	// The game this one was last fully copied from by syncTo
+	private GameState mirrorOf;
+
 	public GameState(int width, int height, int mines, int portals) {
 		this(width, height, mines, portals, GamePermissions.FULL);
 	}
 
 	public GameState(int width, int height, int mines, int portals, int permissions) {
+		this(width, height, mines, portals, permissions, ThreadLocalRandom.current().nextLong());
+	}
+
+	public GameState(int width, int height, int mines, int portals, int permissions, long seed) {
+		this(width, height, mines, portals, permissions, seed, true);
+	}
+
+	// Left empty unless generated, for boards filled in from elsewhere
+	GameState(int width, int height, int mines, int portals, int permissions, long seed, boolean generate) {
+		if (mines < 0 || mines > getMaxMines(width, height)) {
+			throw new IllegalArgumentException(mines + " mines do not fit on a " + width + "x" + height + " board");
+		}
+
 		this.width = width;
 		this.height = height;
 		this.mines = mines;
 		this.portals = portals;
 		this.permissions = permissions;
-		this.mineGrid = new boolean[width][height];
-		this.revealed = new boolean[width][height];
-		this.flagged = new boolean[width][height];
-		this.portalMarks = new int[width][height];
-		this.portalsMap = new HashMap<Int2, Int2>();
+		this.seed = seed;
+		this.mineGrid = new BitGrid(width, height);
+		this.revealed = new BitGrid(width, height);
+		this.flagged = new BitGrid(width, height);
+		this.portalIndex = new PortalIndex(width, height);
+		this.neighborCounts = new NeighborCounts(width, height);
+		this.dirty = new DirtyCells(width, height);
+
+		if (generate) {
+			resetGame();
+		}
+	}
 
-		resetGame();
+	// An empty board the size of the source, which only syncTo fills in
+	public GameState(GameState source) {
+		this.width = source.width;
+		this.height = source.height;
+		this.seed = source.seed;
+		this.mineGrid = new BitGrid(width, height);
+		this.revealed = new BitGrid(width, height);
+		this.flagged = new BitGrid(width, height);
+		this.portalIndex = new PortalIndex(width, height);
+		this.neighborCounts = new NeighborCounts(width, height);
+		this.dirty = new DirtyCells(width, height);
+	}
+
+	// Brings a mirror up to date with everything drawn from this game and marks what changed in
+	// it, so the mirror can be drawn on another thread while this game carries on. Only the cells
+	// marked dirty are copied, and like a frame it uses them up. Counts a full copy needs are
+	// rebuilt lazily by the mirror, on whichever thread draws it.
+	public void syncTo(GameState mirror) {
+		if (dirty.isAll() || mirror.mirrorOf != this) {
+			GameEvents.BoardScan event = new GameEvents.BoardScan();
+			event.begin();
+
+			mirror.mineGrid.copyFrom(mineGrid);
+			mirror.revealed.copyFrom(revealed);
+			mirror.flagged.copyFrom(flagged);
+			mirror.portalIndex.copyFrom(portalIndex);
+			mirror.countsStale = true;
+			mirror.linesStale = true;
+			mirror.mirrorOf = this;
+			mirror.dirty.markAll();
+
+			event.end();
+
+			if (event.shouldCommit()) {
+				event.operation = "Mirror copy";
+				event.cells = width * height;
+				event.commit();
+			}
+		} else {
+			for (int i = 0; i < dirty.size(); i++) {
+				int cell = dirty.get(i);
+				int x = cell % width;
+				int y = cell / width;
+
+				if (mirror.revealed.get(cell) != revealed.get(cell)) {
+					mirror.revealed.set(cell, revealed.get(cell));
+					mirror.linesStale = true;
+				}
+
+				if (mirror.flagged.get(cell) != flagged.get(cell)) {
+					mirror.flagged.set(cell, flagged.get(cell));
+					mirror.neighborCounts.flagChanged(x, y, flagged.get(cell));
+				}
+
+				int e = this.portalIndex.find(x, y);
+
+				if (e >= 0) {
+					mirror.portalIndex.setMarks(e, this.portalIndex.getMarks(e));
+				}
+
+				mirror.dirty.mark(cell);
+			}
+		}
+
+		mirror.mines = mines;
+		mirror.portals = portals;
+		mirror.permissions = permissions;
+		mirror.startNanos = startNanos;
+		mirror.endNanos = endNanos;
+		mirror.clockStopped = clockStopped;
+		mirror.gameLive = gameLive;
+		mirror.officiallyStarted = officiallyStarted;
+		mirror.totalFlags = totalFlags;
+		mirror.totalRevealed = totalRevealed;
+		mirror.correctFlags = correctFlags;
+		mirror.won = won;
+		mirror.mouseX = mouseX;
+		mirror.mouseY = mouseY;
+		mirror.clicked = clicked;
+		mirror.around = around;
+
+		dirty.clear();
 	}
 
 	public void resetGame() {
@@ -52,301 +198,558 @@ public class GameState {
 		this.mouseY = -10;
 		this.around = false;
 
-		this.mineGrid = new boolean[width][height];
-		this.revealed = new boolean[width][height];
-		this.flagged = new boolean[width][height];
-		this.portalMarks = new int[width][height];
-		this.portalsMap.clear();
+		this.mineGrid.clear();
+		this.revealed.clear();
+		this.flagged.clear();
+		this.portalIndex.clear();
+
+		this.totalFlags = 0;
+		this.totalRevealed = 0;
+		this.correctFlags = 0;
+		this.won = false;
 
 		placeMinesAndRoots();
-		startTime = System.currentTimeMillis();
+		startNanos = System.nanoTime();
+		clockStopped = false;
 		gameLive = true;
+
+		dirty.markAll();
 	}
 
 	private void placeMinesAndRoots() {
-		Random random = new Random();
+		placeMinesAndRoots(-10, -10);
+	}
 
-		int minesPlaced = 0;
+	private void placeMinesAndRoots(int safeX, int safeY) {
+		GameEvents.BoardGeneration event = new GameEvents.BoardGeneration();
+		event.begin();
 
-		while (minesPlaced < mines) {
-			int x = random.nextInt(width);
-			int y = random.nextInt(height);
+		BoardGenerator generator = new BoardGenerator(width, height, new SplittableRandom(seed));
+		generator.reserve(safeX, safeY);
 
-			if (!isMine(x, y)) {
-				this.mineGrid[x][y] = true;
-				minesPlaced++;
-			}
+		event.mines = generator.placeMines(mineGrid, mines);
+		rebuildCounts();
+
+		event.portalsPlaced = generator.placePortals(portalIndex, mineGrid, neighborCounts, portals);
+		rebuildCounts();
+
+		event.end();
+
+		if (event.shouldCommit()) {
+			event.width = width;
+			event.height = height;
+			event.portalsRequested = portals;
+			event.firstClick = isInBounds(safeX, safeY);
+			event.rejectedSamples = generator.getRejectedSamples();
+			event.candidateScan = generator.isCandidateScan();
+			event.commit();
 		}
+	}
 
-		int portalsPlaced = 0;
+	private void regenerate(int safeX, int safeY) {
+		this.mineGrid.clear();
+		this.portalIndex.clear();
 
-		while (portalsPlaced < portals) {
-			int x = random.nextInt(width);
-			int y = random.nextInt(height);
-			int x2 = random.nextInt(width);
-			int y2 = random.nextInt(height);
+		placeMinesAndRoots(safeX, safeY);
 
-			if (!isPortal(x, y) && !isMine(x, y) && getSurroundingMines(x, y) != 1 && !isPortal(x2, y2) && !isMine(x2, y2) && getSurroundingMines(x2, y2) != 1 && x != x2 && y != y2) {
-				this.portalsMap.put(new Int2(x, y), new Int2(x2, y2));
-				portalsPlaced++;
-			}
+		this.correctFlags = flagged.countAnd(mineGrid);
+
+		dirty.markAll();
+	}
+
+	private void rebuildCounts() {
+		GameEvents.BoardScan event = new GameEvents.BoardScan();
+		event.begin();
+
+		neighborCounts.rebuild(mineGrid, flagged, portalIndex);
+		countsStale = false;
+
+		event.end();
+
+		if (event.shouldCommit()) {
+			event.operation = "Neighbor counts";
+			event.cells = width * height;
+			event.commit();
+		}
+	}
+
+	protected NeighborCounts getNeighborCounts() {
+		if (countsStale) {
+			rebuildCounts();
 		}
 
+		return neighborCounts;
 	}
 
 	public boolean isMine(int x, int y) {
-		return isInBounds(x, y) ? mineGrid[x][y] : false;
+		return isInBounds(x, y) ? mineGrid.get(x, y) : false;
+	}
+
+	public void setMine(int x, int y, boolean mine) {
+		if (mineGrid.get(x, y) != mine && flagged.get(x, y)) {
+			correctFlags += mine ? 1 : -1;
+		}
+
+		mineGrid.set(x, y, mine);
+		countsStale = true;
+
+		dirty.markAll();
 	}
 
 	public boolean isPortal(int x, int y) {
-		return this.portalsMap.containsKey(new Int2(x, y)) || this.portalsMap.containsValue(new Int2(x, y));
+		return this.portalIndex.contains(x, y);
+	}
+
+	public void addPortal(int x, int y, int x2, int y2) {
+		this.portalIndex.put(x, y, x2, y2);
+		countsStale = true;
+
+		dirty.markAll();
 	}
 
 	public Int2 thru(int x, int y) {
-		return this.portalsMap.containsKey(new Int2(x, y)) ? this.portalsMap.get(new Int2(x, y)) : inv(this.portalsMap).get(new Int2(x, y));
+		int e = this.portalIndex.find(x, y);
+
+		if (e < 0) {
+			return null;
+		}
+
+		int p = PortalIndex.partner(e);
+		return new Int2(this.portalIndex.getX(p), this.portalIndex.getY(p));
 	}
 
 	public boolean portalState(int x, int y) {
-		return this.portalsMap.containsKey(new Int2(x, y));
+		int e = this.portalIndex.find(x, y);
+		return e >= 0 && PortalIndex.isSideA(e);
+	}
+
+	public PortalIndex getPortalIndex() {
+		return portalIndex;
 	}
 
 	public boolean isRevealed(int x, int y) {
-		return isInBounds(x, y) ? revealed[x][y] : false;
+		return isInBounds(x, y) ? revealed.get(x, y) : false;
+	}
+
+	public void setRevealed(int x, int y, boolean revealed) {
+		if (this.revealed.get(x, y) != revealed) {
+			this.revealed.set(x, y, revealed);
+			totalRevealed += revealed ? 1 : -1;
+
+			dirty.mark(x, y);
+			linesStale = true;
+		}
 	}
 
 	public boolean isFlagged(int x, int y) {
-		return isInBounds(x, y) ? flagged[x][y] : false;
+		return isInBounds(x, y) ? flagged.get(x, y) : false;
+	}
+
+	public void setFlagged(int x, int y, boolean flagged) {
+		if (this.flagged.get(x, y) != flagged) {
+			this.flagged.set(x, y, flagged);
+			flagChanged(x, y, flagged);
+
+			dirty.mark(x, y);
+		}
+	}
+
+	private void flagChanged(int x, int y, boolean flagged) {
+		int d = flagged ? 1 : -1;
+
+		totalFlags += d;
+
+		if (mineGrid.get(x, y)) {
+			correctFlags += d;
+		}
+
+		neighborCounts.flagChanged(x, y, flagged);
 	}
 
 	public int getPortalMarks(int x, int y) {
+		int e = this.portalIndex.find(x, y);
 
-		if (!isPortal(x, y)) {
+		if (e < 0) {
 			return 0;
 		}
 
-		return isInBounds(x, y) ? portalMarks[x][y] : 0;
+		return this.portalIndex.getMarks(e);
 	}
 
 	public int reveal(int x, int y) {
+		// Only moves that change something are journaled, the first click always does
+		if (journal != null && isInBounds(x, y) && (!officiallyStarted || (gameLive && !revealed.get(x, y) && !flagged.get(x, y)))) {
+			journal.record(MoveJournal.REVEAL, x, y);
+		}
 
 		if (!officiallyStarted) {
 			if (isInBounds(x, y)) {
-				while (isMine(x, y) || getSurrounding(x, y) != 0 || isPortal(x, y)) {
-					resetGame();
+				if (isMine(x, y) || getSurrounding(x, y) != 0 || isPortal(x, y)) {
+					regenerate(x, y);
 				}
 				officiallyStarted = true;
-				startTime = System.currentTimeMillis();
+				startNanos = System.nanoTime();
 			}
 		}
 
-		if (!isInBounds(x, y) || !gameLive || revealed[x][y] || flagged[x][y]) {
+		if (!isInBounds(x, y) || !gameLive || revealed.get(x, y) || flagged.get(x, y)) {
 			return 0;
 		}
 
-		revealed[x][y] = true;
+		revealed.set(x, y, true);
+
+		dirty.mark(x, y);
+		linesStale = true;
 
 		int i = 1;
 
 		if (isMine(x, y)) {
-			gameLive = false;
+			totalRevealed++;
+			finishGame(false);
 		} else {
 			if (getSurrounding(x, y) == 0) {
-				for (int dx = -1; dx <= 1; dx++) {
-					for (int dy = -1; dy <= 1; dy++) {
-						if (!isRevealed(x + dx, y + dy)) {
-							i += reveal(x + dx, y + dy);
+				GameEvents.RevealCascade event = new GameEvents.RevealCascade();
+				event.begin();
+
+				int opened = cascade(revealed.index(x, y));
+				i += opened;
+
+				event.end();
+
+				if (event.shouldCommit()) {
+					event.x = x;
+					event.y = y;
+					event.cellsOpened = opened;
+					event.commit();
+				}
+			}
+
+			totalRevealed += i;
+			checkWon();
+		}
+
+		return i;
+	}
+
+	private void checkWon() {
+		if (gameLive && correctFlags == mines && totalFlags == mines && totalRevealed == width * height - mines) {
+			finishGame(true);
+		}
+	}
+
+	private void finishGame(boolean won) {
+		this.gameLive = false;
+		this.won = won;
+		this.endNanos = System.nanoTime();
+
+		dirty.markAll();
+	}
+
+	public boolean isWon() {
+		return won;
+	}
+
+	// Opens the zero region around an already revealed zero cell. Only zero cells are
+	// queued, so the stack never holds more than the region itself.
+	private int cascade(int start) {
+		NeighborCounts counts = getNeighborCounts();
+
+		int[] stack = new int[16];
+		int size = 0;
+		int opened = 0;
+
+		stack[size++] = start;
+
+		while (size > 0) {
+			int cell = stack[--size];
+
+			int x = cell % width;
+			int y = cell / width;
+
+			for (int ny = Math.max(y - 1, 0); ny <= Math.min(y + 1, height - 1); ny++) {
+				for (int nx = Math.max(x - 1, 0); nx <= Math.min(x + 1, width - 1); nx++) {
+					int n = ny * width + nx;
+
+					if (revealed.get(n) || flagged.get(n)) {
+						continue;
+					}
+
+					revealed.set(n, true);
+					dirty.mark(n);
+					opened++;
+
+					if (counts.getSurrounding(n) == 0) {
+						if (size == stack.length) {
+							stack = Arrays.copyOf(stack, size * 2);
 						}
+
+						stack[size++] = n;
 					}
 				}
 			}
 		}
 
-		return i;
+		return opened;
 	}
 
 	public void toggleFlag(int x, int y) {
-		if (!gameLive || revealed[x][y]) {
+		if (!gameLive || revealed.get(x, y)) {
 			return;
 		}
-		flagged[x][y] = !flagged[x][y];
+
+		if (journal != null) {
+			journal.record(MoveJournal.FLAG, x, y);
+		}
+
+		flagChanged(x, y, flagged.flip(x, y));
+		dirty.mark(x, y);
+		checkWon();
 	}
 
 	public boolean increaseMark(int x, int y) {
-		if (!gameLive || !revealed[x][y] || !isPortal(x, y)) {
+		int e = this.portalIndex.find(x, y);
+
+		if (!gameLive || !revealed.get(x, y) || e < 0) {
 			return false;
 		}
-		portalMarks[x][y] = Math.min(portalMarks[x][y] + 1, 64);
+
+		int marks = Math.min(portalIndex.getMarks(e) + 1, 64);
+
+		if (journal != null && marks != portalIndex.getMarks(e)) {
+			journal.record(MoveJournal.MARK_UP, x, y);
+		}
+
+		portalIndex.setMarks(e, marks);
+		dirty.mark(x, y);
 		return true;
 	}
 
 	public boolean decreaseMark(int x, int y) {
-		if (!gameLive || !revealed[x][y] || !isPortal(x, y)) {
+		int e = this.portalIndex.find(x, y);
+
+		if (!gameLive || !revealed.get(x, y) || e < 0) {
 			return false;
 		}
-		portalMarks[x][y] = Math.max(portalMarks[x][y] - 1, 0);
+
+		int marks = Math.max(portalIndex.getMarks(e) - 1, 0);
+
+		if (journal != null && marks != portalIndex.getMarks(e)) {
+			journal.record(MoveJournal.MARK_DOWN, x, y);
+		}
+
+		portalIndex.setMarks(e, marks);
+		dirty.mark(x, y);
 		return true;
 	}
 
 	public long getElapsedTime() {
-		return officiallyStarted ? (endTime - startTime) / 1000 : 0;
+		return TimeUnit.NANOSECONDS.toSeconds(getElapsedNanos());
 	}
 
-	public void drawCells(Graphics2D g, boolean realGame) {
-		drawCells(realGame, (x, y, dx, dy) -> {
+	public long getElapsedNanos() {
+		if (!officiallyStarted) {
+			return 0;
+		}
 
-			if (isRevealed(x, y) || (clicked && x == mouseX && y == mouseY) || (clicked && around && isAroundMouse(x, y))) {
-				g.drawImage(PweeperMain.SPRITES.get("CellRevealed"), dx, dy, null);
-			} else {
-				g.drawImage(PweeperMain.SPRITES.get("Cell"), dx, dy, null);
-			}
+		return (gameLive && !clockStopped ? System.nanoTime() : endNanos) - startNanos;
+	}
+
+	// Shows the time a replay has reached, rather than however long it took to replay
+	void stopClock(long elapsedNanos) {
+		this.clockStopped = true;
+		this.endNanos = System.nanoTime();
+		this.startNanos = endNanos - elapsedNanos;
+	}
+
+	// Works out everything a snapshot leaves out once its grids and portals are in place. The
+	// clock carries on from the elapsed time, as if the game had been running all along.
+	void restored(boolean gameLive, boolean officiallyStarted, boolean won, long elapsedNanos) {
+		this.gameLive = gameLive;
+		this.officiallyStarted = officiallyStarted;
+		this.won = won;
+
+		this.clockStopped = false;
+		this.endNanos = System.nanoTime();
+		this.startNanos = endNanos - elapsedNanos;
+
+		this.totalFlags = flagged.cardinality();
+		this.totalRevealed = revealed.cardinality();
+		this.correctFlags = flagged.countAnd(mineGrid);
+
+		countsStale = true;
+		linesStale = true;
+		dirty.markAll();
+	}
+
+	public void drawCells(Graphics2D g, boolean realGame) {
+		drawCells(realGame, (x, y, dx, dy) -> drawCell(g, x, y, dx, dy));
+	}
 
-		});
+	public void drawCell(Graphics2D g, int x, int y, int dx, int dy) {
+		if (isRevealed(x, y) || (clicked && x == mouseX && y == mouseY) || (clicked && around && isAroundMouse(x, y))) {
+			drawSprite(g, PweeperMain.ATLAS.get(Sprite.CELL_REVEALED), dx, dy);
+		} else {
+			drawSprite(g, PweeperMain.ATLAS.get(Sprite.CELL), dx, dy);
+		}
 	}
 
 	public void drawPortalCells(Graphics2D g, boolean realGame) {
-		drawCells(realGame, (x, y, dx, dy) -> {
-			if (x == mouseX && y == mouseY) {
-				if (isPortal(x, y)) {
-					if (portalState(x, y)) {
-						if (isRevealed(x, y)) {
-							g.drawImage(PweeperMain.SPRITES.get("CellA"), dx, dy, null);
-						} else if (!gameLive) {
-							g.drawImage(PweeperMain.SPRITES.get("CellRevealedA"), dx, dy, null);
-						}
+		drawCells(realGame, (x, y, dx, dy) -> drawPortalCell(g, x, y, dx, dy, realGame));
+	}
 
-						Int2 portal = this.portalsMap.get(new Int2(x, y));
+	// Also draws the highlight on the partner cell, so the partner's own pass never has to
+	public void drawPortalCell(Graphics2D g, int x, int y, int dx, int dy, boolean realGame) {
+		if (x == mouseX && y == mouseY) {
+			int e = this.portalIndex.find(x, y);
 
-						int ddx = portal.x * 20 + (realGame ? 10 : 0);
-						int ddy = portal.y * 20 + (realGame ? 70 : 0);
+			if (e >= 0) {
+				int p = PortalIndex.partner(e);
+				int px = this.portalIndex.getX(p);
+				int py = this.portalIndex.getY(p);
 
-						if (gameLive) {
-							if (isRevealed(portal.x, portal.y) && isRevealed(x, y)) {
-								g.drawImage(PweeperMain.SPRITES.get("CellB"), ddx, ddy, null);
-							}
-						} else {
-							if (isRevealed(portal.x, portal.y)) {
-								g.drawImage(PweeperMain.SPRITES.get("CellB"), ddx, ddy, null);
-							} else {
-								g.drawImage(PweeperMain.SPRITES.get("CellRevealedB"), ddx, ddy, null);
-							}
-						}
-					} else {
-						if (isRevealed(x, y)) {
-							g.drawImage(PweeperMain.SPRITES.get("CellB"), dx, dy, null);
-						} else if (!gameLive) {
-							g.drawImage(PweeperMain.SPRITES.get("CellRevealedB"), dx, dy, null);
-						}
+				int ddx = px * 20 + (realGame ? 10 : 0);
+				int ddy = py * 20 + (realGame ? 70 : 0);
 
-						Int2 portal = inv(this.portalsMap).get(new Int2(x, y));
+				drawPortalHover(g, e, isRevealed(x, y), dx, dy);
+				drawPortalPartner(g, p, isRevealed(px, py), ddx, ddy);
+			}
+		}
+	}
 
-						int ddx = portal.x * 20 + (realGame ? 10 : 0);
-						int ddy = portal.y * 20 + (realGame ? 70 : 0);
+	// The hovered endpoint e itself
+	private void drawPortalHover(Graphics2D g, int e, boolean revealed, int dx, int dy) {
+		if (revealed) {
+			drawSprite(g, PweeperMain.ATLAS.get(PortalIndex.isSideA(e) ? Sprite.CELL_A : Sprite.CELL_B), dx, dy);
+		} else if (!gameLive) {
+			drawSprite(g, PweeperMain.ATLAS.get(PortalIndex.isSideA(e) ? Sprite.CELL_REVEALED_A : Sprite.CELL_REVEALED_B), dx, dy);
+		}
+	}
 
-						if (gameLive) {
-							if (isRevealed(portal.x, portal.y) && isRevealed(x, y)) {
-								g.drawImage(PweeperMain.SPRITES.get("CellA"), ddx, ddy, null);
-							}
-						} else {
-							if (isRevealed(portal.x, portal.y)) {
-								g.drawImage(PweeperMain.SPRITES.get("CellA"), ddx, ddy, null);
-							} else {
-								g.drawImage(PweeperMain.SPRITES.get("CellRevealedA"), ddx, ddy, null);
-							}
-						}
-					}
-				}
+	// Endpoint p, whose partner is the hovered one
+	private void drawPortalPartner(Graphics2D g, int p, boolean revealed, int dx, int dy) {
+		if (gameLive) {
+			if (revealed && isRevealed(mouseX, mouseY)) {
+				drawSprite(g, PweeperMain.ATLAS.get(PortalIndex.isSideA(p) ? Sprite.CELL_A : Sprite.CELL_B), dx, dy);
+			}
+		} else {
+			if (revealed) {
+				drawSprite(g, PweeperMain.ATLAS.get(PortalIndex.isSideA(p) ? Sprite.CELL_A : Sprite.CELL_B), dx, dy);
+			} else {
+				drawSprite(g, PweeperMain.ATLAS.get(PortalIndex.isSideA(p) ? Sprite.CELL_REVEALED_A : Sprite.CELL_REVEALED_B), dx, dy);
 			}
-		});
+		}
 	}
 
 	public void drawPortals(Graphics2D g, boolean realGame) {
-		drawCells(realGame, (x, y, dx, dy) -> {
-			if (isRevealed(x, y) || !gameLive) {
-				if (isPortal(x, y)) {
-					if (portalState(x, y)) {
-						g.drawImage(PweeperMain.SPRITES.get("PortalA"), dx, dy, null);
-					} else {
-						g.drawImage(PweeperMain.SPRITES.get("PortalB"), dx, dy, null);
-					}
+		drawCells(realGame, (x, y, dx, dy) -> drawPortal(g, x, y, dx, dy));
+	}
+
+	public void drawPortal(Graphics2D g, int x, int y, int dx, int dy) {
+		if (isRevealed(x, y) || !gameLive) {
+			int e = this.portalIndex.find(x, y);
+
+			if (e >= 0) {
+				if (PortalIndex.isSideA(e)) {
+					drawSprite(g, PweeperMain.ATLAS.get(Sprite.PORTAL_A), dx, dy);
+				} else {
+					drawSprite(g, PweeperMain.ATLAS.get(Sprite.PORTAL_B), dx, dy);
 				}
 			}
-		});
+		}
 	}
 
 	public void drawLinesConnectingPortals(Graphics2D g, boolean realGame) {
-		drawCells(realGame, (x, y, dx, dy) -> {
-			if (isPortal(x, y)) {
-				if (isRevealed(x, y) && gameLive || !gameLive) {
-					Int2 thru = thru(x, y);
+		drawCells(realGame, (x, y, dx, dy) -> drawLineConnectingPortal(g, x, y));
+	}
 
-					if (isRevealed(thru.x, thru.y) && gameLive || !gameLive) {
-						g.setColor(new Color(188, 164, 180));
+	public void drawLineConnectingPortal(Graphics2D g, int x, int y) {
+		int e = this.portalIndex.find(x, y);
 
-						g.drawLine(x * 20 + 20, y * 20 + 80, thru.x * 20 + 20, thru.y * 20 + 80);
-					}
-				}
-			}
-		});
+		if (e >= 0 && isLineShown(e)) {
+			int p = PortalIndex.partner(e);
+			int px = this.portalIndex.getX(p);
+			int py = this.portalIndex.getY(p);
+
+			g.setColor(LINE_COLOR);
+
+			g.drawLine(x * 20 + 20, y * 20 + 80, px * 20 + 20, py * 20 + 80);
+		}
+	}
+
+	private boolean isLineShown(int e) {
+		int p = PortalIndex.partner(e);
+		return !gameLive || (isRevealed(portalIndex.getX(e), portalIndex.getY(e)) && isRevealed(portalIndex.getX(p), portalIndex.getY(p)));
 	}
 
 	public void drawFlags(Graphics2D g, boolean realGame) {
-		drawCells(realGame, (x, y, dx, dy) -> {
+		drawCells(realGame, (x, y, dx, dy) -> drawFlag(g, x, y, dx, dy));
+	}
 
-			if (!isRevealed(x, y) && isFlagged(x, y)) {
-				if ((!gameLive && !isPortal(x, y)) || gameLive) {
-					g.drawImage(PweeperMain.SPRITES.get("Flag"), dx, dy, null);
-				}
+	public void drawFlag(Graphics2D g, int x, int y, int dx, int dy) {
+		if (!isRevealed(x, y) && isFlagged(x, y)) {
+			if ((!gameLive && !isPortal(x, y)) || gameLive) {
+				drawSprite(g, PweeperMain.ATLAS.get(Sprite.FLAG), dx, dy);
+			}
 
-				if (!gameLive && !isMine(x, y)) {
-					g.drawImage(PweeperMain.SPRITES.get("CellWrong"), dx, dy, null);
-				}
+			if (!gameLive && !isMine(x, y)) {
+				drawSprite(g, PweeperMain.ATLAS.get(Sprite.CELL_WRONG), dx, dy);
 			}
-		});
+		}
 	}
 
 	public void drawEndScreen(Graphics2D g, boolean realGame) {
-		drawCells(realGame, (x, y, dx, dy) -> {
-			if (!gameLive) {
-				if (isMine(x, y)) {
-					if (isRevealed(x, y)) {
-						g.drawImage(PweeperMain.SPRITES.get("MineRevealed"), dx, dy, null);
+		drawCells(realGame, (x, y, dx, dy) -> drawEndScreen(g, x, y, dx, dy));
+	}
+
+	public void drawEndScreen(Graphics2D g, int x, int y, int dx, int dy) {
+		if (!gameLive) {
+			if (isMine(x, y)) {
+				if (isRevealed(x, y)) {
+					drawSprite(g, PweeperMain.ATLAS.get(Sprite.MINE_REVEALED), dx, dy);
+				} else {
+					if (isFlagged(x, y)) {
+						drawSprite(g, PweeperMain.ATLAS.get(Sprite.MINE_CORRECT), dx, dy);
 					} else {
-						if (isFlagged(x, y)) {
-							g.drawImage(PweeperMain.SPRITES.get("MineCorrect"), dx, dy, null);
-						} else {
-							g.drawImage(PweeperMain.SPRITES.get("Mine"), dx, dy, null);
-						}
+						drawSprite(g, PweeperMain.ATLAS.get(Sprite.MINE), dx, dy);
 					}
 				}
 			}
-		});
+		}
 	}
 
 	public void drawMineCount(Graphics2D g, boolean realGame) {
-		drawCells(realGame, (x, y, dx, dy) -> {
-			if (isRevealed(x, y) && !isPortal(x, y) && !isMine(x, y)) {
-				int c = getSurrounding(x, y);
+		drawCells(realGame, (x, y, dx, dy) -> drawMineCount(g, x, y, dx, dy));
+	}
 
-				if (c > 0 && c <= 64) {
-					g.drawImage(PweeperMain.SPRITES.get("" + c), dx, dy, null);
-				}
-			}
+	public void drawMineCount(Graphics2D g, int x, int y, int dx, int dy) {
+		if (isRevealed(x, y) && !isPortal(x, y) && !isMine(x, y)) {
+			int c = getSurrounding(x, y);
 
-			if (isRevealed(x, y) && isPortal(x, y) && !isMine(x, y)) {
-				int m = getPortalMarks(x, y);
+			if (c > 0 && c <= 64) {
+				drawSprite(g, PweeperMain.ATLAS.number(c), dx, dy);
+			}
+		}
 
-				if (m > 0 && m <= 64) {
-					if (m == 1) {
-						m = 0;
-					}
+		if (isRevealed(x, y) && isPortal(x, y) && !isMine(x, y)) {
+			int m = getPortalMarks(x, y);
 
-					g.drawImage(PweeperMain.SPRITES.get("" + m), dx, dy, null);
+			if (m > 0 && m <= 64) {
+				if (m == 1) {
+					m = 0;
 				}
+
+				drawSprite(g, PweeperMain.ATLAS.number(m), dx, dy);
 			}
-		});
+		}
 	}
 
 	public void drawGame(Graphics2D g, boolean won) {
+		drawCounters(g);
+		drawBorder(g);
+		drawFace(g, won);
+	}
+
+	public void drawCounters(Graphics2D g) {
 		g.setColor(new Color(206, 206, 206));
 		g.fillRect(10, 10, getWidth() * 20, 50);
 
@@ -356,119 +759,378 @@ public class GameState {
 		g.setColor(new Color(0, 0, 0));
 		g.fillRect(getWidth() * 20 - 69, 13, 25 * 3 + 2, 44);
 
-		int flags = getTotalFlags();
+		int flagsLeft = mines - getTotalFlags();
 
-		String flagStr = String.format("%03d", mines - flags);
+		drawClock(g, flagsLeft, 12, true);
+		drawClock(g, officiallyStarted ? getElapsedTime() : 0, getWidth() * 20 - 68, false);
 
-		int i = 0;
-		for (char c : flagStr.toCharArray()) {
+		g.setColor(new Color(60, 60, 60));
+		g.drawRect(11, 12, 25 * 3 + 2, 45);
 
-			if (c == '-') {
-				c = 'M';
-			}
+		g.setColor(new Color(60, 60, 60));
+		g.drawRect(getWidth() * 20 - 69, 12, 25 * 3 + 2, 45);
+	}
 
-			if (3 - Integer.toString(mines - flags).length() <= i || mines - flags < 0) {
-				g.drawImage(PweeperMain.SPRITES.get("Clock" + c), 12 + 25 * i, 12, null);
-			} else {
-				g.drawImage(PweeperMain.SPRITES.get("ClockNot"), 12 + 25 * i, 12, null);
-			}
+	// Lays the digits out like String.format("%03d", value) without building any strings. The
+	// zero padding is unlit, except for a negative value when the sign is shown, in which case
+	// the sign and every digit light up. The timer has never had a sign sprite to draw.
+	private void drawClock(Graphics2D g, long value, int x, boolean showSign) {
+		long magnitude = Math.abs(value);
 
-			i++;
+		int digits = 1;
+
+		for (long v = magnitude / 10; v > 0; v /= 10) {
+			digits++;
 		}
 
-		String timeStr = String.format("%03d", officiallyStarted ? getElapsedTime() : 0);
+		int length = digits + (value < 0 ? 1 : 0);
+		int padded = Math.max(length, 3);
+
+		long place = 1;
+
+		for (int i = 1; i < padded - (value < 0 ? 1 : 0); i++) {
+			place *= 10;
+		}
 
-		i = 0;
-		for (char c : timeStr.toCharArray()) {
+		for (int i = 0; i < padded; i++) {
+			BufferedImage glyph;
 
-			if (3 - Long.toString(getElapsedTime()).length() <= i) {
-				g.drawImage(PweeperMain.SPRITES.get("Clock" + c), getWidth() * 20 - 68 + 25 * i, 12, null);
+			if (value < 0 && i == 0) {
+				glyph = showSign ? PweeperMain.ATLAS.get(Sprite.CLOCK_MINUS) : null;
 			} else {
-				g.drawImage(PweeperMain.SPRITES.get("ClockNot"), getWidth() * 20 - 68 + 25 * i, 12, null);
+				glyph = PweeperMain.ATLAS.clockDigit((int) (magnitude / place % 10));
+				place /= 10;
 			}
 
-			i++;
+			if (3 - length <= i || (showSign && value < 0)) {
+				g.drawImage(glyph, x + 25 * i, 12, null);
+			} else {
+				g.drawImage(PweeperMain.ATLAS.get(Sprite.CLOCK_NOT), x + 25 * i, 12, null);
+			}
 		}
+	}
 
-		g.setColor(new Color(60, 60, 60));
-		g.drawRect(11, 12, 25 * 3 + 2, 45);
-
-		g.setColor(new Color(60, 60, 60));
-		g.drawRect(getWidth() * 20 - 69, 12, 25 * 3 + 2, 45);
-
-		Int2 min = getDrawMin();
-		Int2 max = getDrawMax();
+	public void drawBorder(Graphics2D g) {
+		drawBorder(g, getDrawMinX() - 1, getDrawMinY() - 1, getDrawMaxX() + 1, getDrawMaxY() + 1);
+	}
 
-		for (int x = min.x - 1; x < max.x + 1; x++) {
+	// The edges are only laid along the given columns and rows, the corners and header always
+	private void drawBorder(Graphics2D g, int x0, int y0, int x1, int y1) {
+		for (int x = x0; x < x1; x++) {
 			int dx = x * 20 + 10;
 
-			g.drawImage(PweeperMain.SPRITES.get("BoarderTB"), dx, 0, null);
-			g.drawImage(PweeperMain.SPRITES.get("BoarderTB"), dx + 10, 0, null);
+			g.drawImage(PweeperMain.ATLAS.get(Sprite.BOARDER_TB), dx, 0, null);
+			g.drawImage(PweeperMain.ATLAS.get(Sprite.BOARDER_TB), dx + 10, 0, null);
 
-			g.drawImage(PweeperMain.SPRITES.get("BoarderTB"), dx, 60, null);
-			g.drawImage(PweeperMain.SPRITES.get("BoarderTB"), dx + 10, 60, null);
+			g.drawImage(PweeperMain.ATLAS.get(Sprite.BOARDER_TB), dx, 60, null);
+			g.drawImage(PweeperMain.ATLAS.get(Sprite.BOARDER_TB), dx + 10, 60, null);
 
-			g.drawImage(PweeperMain.SPRITES.get("BoarderTB"), dx, getHeight() * 20 + 70, null);
-			g.drawImage(PweeperMain.SPRITES.get("BoarderTB"), dx + 10, getHeight() * 20 + 70, null);
+			g.drawImage(PweeperMain.ATLAS.get(Sprite.BOARDER_TB), dx, getHeight() * 20 + 70, null);
+			g.drawImage(PweeperMain.ATLAS.get(Sprite.BOARDER_TB), dx + 10, getHeight() * 20 + 70, null);
 		}
 
-		for (int y = min.y - 1; y < max.y + 1; y++) {
+		for (int y = y0; y < y1; y++) {
 			int dy = y * 20 + 70;
 
-			g.drawImage(PweeperMain.SPRITES.get("BoarderLR"), 0, dy, null);
-			g.drawImage(PweeperMain.SPRITES.get("BoarderLR"), 0, dy + 10, null);
+			g.drawImage(PweeperMain.ATLAS.get(Sprite.BOARDER_LR), 0, dy, null);
+			g.drawImage(PweeperMain.ATLAS.get(Sprite.BOARDER_LR), 0, dy + 10, null);
 
-			g.drawImage(PweeperMain.SPRITES.get("BoarderLR"), getWidth() * 20 + 10, dy, null);
-			g.drawImage(PweeperMain.SPRITES.get("BoarderLR"), getWidth() * 20 + 10, dy + 10, null);
+			g.drawImage(PweeperMain.ATLAS.get(Sprite.BOARDER_LR), getWidth() * 20 + 10, dy, null);
+			g.drawImage(PweeperMain.ATLAS.get(Sprite.BOARDER_LR), getWidth() * 20 + 10, dy + 10, null);
 		}
 
 		for (int y = 1; y < 6; y++) {
 			int dy = y * 10;
 
-			g.drawImage(PweeperMain.SPRITES.get("BoarderLR"), 0, dy, null);
-			g.drawImage(PweeperMain.SPRITES.get("BoarderLR"), getWidth() * 20 + 10, dy, null);
+			g.drawImage(PweeperMain.ATLAS.get(Sprite.BOARDER_LR), 0, dy, null);
+			g.drawImage(PweeperMain.ATLAS.get(Sprite.BOARDER_LR), getWidth() * 20 + 10, dy, null);
 		}
 
-		g.drawImage(PweeperMain.SPRITES.get("BoarderTL"), 0, 0, null);
-		g.drawImage(PweeperMain.SPRITES.get("BoarderTR"), getWidth() * 20 + 10, 0, null);
-		g.drawImage(PweeperMain.SPRITES.get("BoarderBL"), 0, getHeight() * 20 + 70, null);
-		g.drawImage(PweeperMain.SPRITES.get("BoarderBR"), getWidth() * 20 + 10, getHeight() * 20 + 70, null);
+		g.drawImage(PweeperMain.ATLAS.get(Sprite.BOARDER_TL), 0, 0, null);
+		g.drawImage(PweeperMain.ATLAS.get(Sprite.BOARDER_TR), getWidth() * 20 + 10, 0, null);
+		g.drawImage(PweeperMain.ATLAS.get(Sprite.BOARDER_BL), 0, getHeight() * 20 + 70, null);
+		g.drawImage(PweeperMain.ATLAS.get(Sprite.BOARDER_BR), getWidth() * 20 + 10, getHeight() * 20 + 70, null);
 
-		g.drawImage(PweeperMain.SPRITES.get("BoarderBLR"), 0, 60, null);
-		g.drawImage(PweeperMain.SPRITES.get("BoarderTRL"), getWidth() * 20 + 10, 60, null);
+		g.drawImage(PweeperMain.ATLAS.get(Sprite.BOARDER_BLR), 0, 60, null);
+		g.drawImage(PweeperMain.ATLAS.get(Sprite.BOARDER_TRL), getWidth() * 20 + 10, 60, null);
+	}
 
+	public void drawFace(Graphics2D g, boolean won) {
 		if (clicked && (mouseX == Math.floor(width / 2.0) - 1 || mouseX == Math.floor(width / 2.0)) && (mouseY == -2 || mouseY == -3)) {
-			g.drawImage(PweeperMain.SPRITES.get("FaceClicked"), getWidth() * 10 - 10, 15, null);
+			g.drawImage(PweeperMain.ATLAS.get(Sprite.FACE_CLICKED), getWidth() * 10 - 10, 15, null);
 		} else {
-			g.drawImage(PweeperMain.SPRITES.get("FaceUnclicked"), getWidth() * 10 - 10, 15, null);
+			g.drawImage(PweeperMain.ATLAS.get(Sprite.FACE_UNCLICKED), getWidth() * 10 - 10, 15, null);
 		}
 
 		if (gameLive) {
 			if (clicked || around) {
-				g.drawImage(PweeperMain.SPRITES.get("Face2"), getWidth() * 10 - 10, 15, null);
+				g.drawImage(PweeperMain.ATLAS.get(Sprite.FACE_2), getWidth() * 10 - 10, 15, null);
 			} else {
-				g.drawImage(PweeperMain.SPRITES.get("Face1"), getWidth() * 10 - 10, 15, null);
+				g.drawImage(PweeperMain.ATLAS.get(Sprite.FACE_1), getWidth() * 10 - 10, 15, null);
 			}
-			endTime = System.currentTimeMillis();
 		} else {
 			if (won) {
-				g.drawImage(PweeperMain.SPRITES.get("Face4"), getWidth() * 10 - 10, 15, null);
+				g.drawImage(PweeperMain.ATLAS.get(Sprite.FACE_4), getWidth() * 10 - 10, 15, null);
 			} else {
-				g.drawImage(PweeperMain.SPRITES.get("Face3"), getWidth() * 10 - 10, 15, null);
+				g.drawImage(PweeperMain.ATLAS.get(Sprite.FACE_3), getWidth() * 10 - 10, 15, null);
 			}
 		}
+	}
 
-		if (gameLive) {
-			if (mines - getTotalFlags() == 0 && getTotalRevealed() == width * height - mines) {
-				gameLive = false;
+	// Redraws only the cells marked dirty since the last frame into the same canvas. A new
+	// canvas, a reset, or the visible range growing past what was drawn forces a full frame.
+	public void draw(BufferedImage canvas, boolean realGame) {
+		Graphics2D g = canvas.createGraphics();
+
+		int x0 = Math.max(getDrawMinX() - 1, 0);
+		int y0 = Math.max(getDrawMinY() - 1, 0);
+		int x1 = Math.min(getDrawMaxX() + 1, getWidth());
+		int y1 = Math.min(getDrawMaxY() + 1, getHeight());
+
+		// Narrow boards let the counters spill over the border, so only the full frame is exact
+		if (canvas != drawnCanvas || realGame != drawnRealGame || (realGame && width < 4) || x0 < drawnX0 || y0 < drawnY0 || x1 > drawnX1 || y1 > drawnY1) {
+			dirty.markAll();
+		}
+
+		// Marking the cells under new lines can itself tip the frame over into a full redraw
+		if (linesStale && !dirty.isAll()) {
+			updateLines(true, realGame);
+		}
+
+		if (dirty.isAll()) {
+			drawnCanvas = canvas;
+			drawnTiles = null;
+			drawnOverview = null;
+			drawnRealGame = realGame;
+			drawnX0 = x0;
+			drawnY0 = y0;
+			drawnX1 = x1;
+			drawnY1 = y1;
+
+			updateLines(false, realGame);
+
+			g.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+			drawBoard(g, realGame, x0, y0, x1, y1, 0, 0, canvas.getWidth(), canvas.getHeight());
+
+			if (realGame) {
+				headerDrawn();
+				drawGame(g, won);
+			}
+		} else {
+			for (int i = 0; i < dirty.size(); i++) {
+				redrawCell(g, dirty.get(i), realGame);
+			}
+
+			g.setClip(null);
+
+			if (realGame) {
+				redrawHeader((x, y, w, h) -> {
+					drawRegion(g, x, y, w, h, true);
+					g.setClip(null);
+				});
 			}
 		}
+
+		dirty.clear();
+		g.dispose();
 	}
 
-	public void draw(BufferedImage canvas, boolean realGame) {
-		Graphics2D g = canvas.createGraphics();
-		g.clearRect(0, 0, canvas.getWidth(), canvas.getHeight());
+	// Keeps a tile cache in step with the game. Tiles are rendered by drawRegion when first asked
+	// for, covering the whole board rather than the visible range, so a cached tile stays right
+	// however the view moves. Dirty cells are redrawn into whichever cached tiles they touch.
+	public void draw(TileCache tiles, boolean realGame) {
+		if (tiles != drawnTiles || realGame != drawnRealGame) {
+			dirty.markAll();
+		}
+
+		if (linesStale && !dirty.isAll()) {
+			updateLines(true, realGame);
+		}
 
+		if (dirty.isAll()) {
+			drawnCanvas = null;
+			drawnTiles = tiles;
+			drawnOverview = null;
+			drawnRealGame = realGame;
+			drawnX0 = 0;
+			drawnY0 = 0;
+			drawnX1 = width;
+			drawnY1 = height;
+
+			updateLines(false, realGame);
+
+			tiles.clear();
+			headerDrawn();
+		} else {
+			for (int i = 0; i < dirty.size(); i++) {
+				int cell = dirty.get(i);
+
+				tiles.update((cell % width) * 20 + (realGame ? 10 : 0), (cell / width) * 20 + (realGame ? 70 : 0), 20, 20, (g, x, y, w, h) -> redrawCell(g, cell, realGame));
+			}
+
+			if (realGame) {
+				redrawHeader((x, y, w, h) -> tiles.update(x, y, w, h, (g, rx, ry, rw, rh) -> drawRegion(g, rx, ry, rw, rh, true)));
+			}
+		}
+
+		dirty.clear();
+	}
+
+	// Keeps a one pixel per cell overview in step with the game, for views zoomed out too far to
+	// make out sprites. Only the cells marked dirty are repainted, so even huge boards stay cheap.
+	public void draw(BoardOverview overview) {
+		if (overview != drawnOverview) {
+			dirty.markAll();
+		}
+
+		if (dirty.isAll()) {
+			drawnCanvas = null;
+			drawnTiles = null;
+			drawnOverview = overview;
+
+			// Every cell as if there were no portals, then the portal ends over the top
+			for (int y = 0; y < height; y++) {
+				for (int x = 0; x < width; x++) {
+					overview.set(y * width + x, getOverviewSprite(x, y, -1, this.revealed.get(x, y)));
+				}
+			}
+
+			for (int e = 0; e < this.portalIndex.size() * 2; e++) {
+				int x = this.portalIndex.getX(e);
+				int y = this.portalIndex.getY(e);
+
+				overview.set(this.portalIndex.getCell(e), getOverviewSprite(x, y, e, this.revealed.get(x, y)));
+			}
+		} else {
+			for (int i = 0; i < dirty.size(); i++) {
+				int cell = dirty.get(i);
+				int x = cell % width;
+				int y = cell / width;
+
+				overview.set(cell, getOverviewSprite(x, y, this.portalIndex.find(x, y), isRevealed(x, y)));
+			}
+		}
+
+		dirty.clear();
+	}
+
+	// The sprite that would end up on top of the cell, leaving out numbers and the mouse
+	private Sprite getOverviewSprite(int x, int y, int e, boolean revealed) {
+		if (!gameLive && isMine(x, y)) {
+			return revealed ? Sprite.MINE_REVEALED : isFlagged(x, y) ? Sprite.MINE_CORRECT : Sprite.MINE;
+		}
+
+		if (e >= 0 && (revealed || !gameLive)) {
+			return PortalIndex.isSideA(e) ? Sprite.PORTAL_A : Sprite.PORTAL_B;
+		}
+
+		if (revealed) {
+			return Sprite.CELL_REVEALED;
+		}
+
+		if (isFlagged(x, y)) {
+			return gameLive ? Sprite.FLAG : Sprite.CELL_WRONG;
+		}
+
+		return Sprite.CELL;
+	}
+
+	// Draws the part of the frame inside the region, in canvas coordinates, exactly as a full frame
+	// of the range last set up by draw would. Used to render tiles, so it only touches what it must.
+	public void drawRegion(Graphics2D g, int px, int py, int pw, int ph, boolean realGame) {
+		int ox = realGame ? 10 : 0;
+		int oy = realGame ? 70 : 0;
+
+		g.clipRect(px, py, pw, ph);
+		g.clearRect(px, py, pw, ph);
+
+		int x0 = Math.max(Math.floorDiv(px - ox, 20), drawnX0);
+		int y0 = Math.max(Math.floorDiv(py - oy, 20), drawnY0);
+		int x1 = Math.min(Math.floorDiv(px + pw - 1 - ox, 20) + 1, drawnX1);
+		int y1 = Math.min(Math.floorDiv(py + ph - 1 - oy, 20) + 1, drawnY1);
+
+		drawBoard(g, realGame, x0, y0, x1, y1, px, py, pw, ph);
+
+		if (realGame) {
+			if (py < 70) {
+				drawCounters(g);
+			}
+
+			drawBorder(g, Math.max(Math.floorDiv(px - 10, 20) - 1, drawnX0 - 1), Math.max(Math.floorDiv(py - 70, 20) - 1, drawnY0 - 1), Math.min(Math.floorDiv(px + pw - 10, 20) + 1, drawnX1 + 1), Math.min(Math.floorDiv(py + ph - 70, 20) + 1, drawnY1 + 1));
+
+			if (py < 70) {
+				drawFace(g, won);
+			}
+		}
+	}
+
+	// Everything the face is drawn from, so an unchanged face can be skipped
+	private int getFaceState() {
+		boolean faceClicked = clicked && (mouseX == Math.floor(width / 2.0) - 1 || mouseX == Math.floor(width / 2.0)) && (mouseY == -2 || mouseY == -3);
+		return (faceClicked ? 1 : 0) | (gameLive ? 2 : 0) | (clicked || around ? 4 : 0) | (won ? 8 : 0);
+	}
+
+	private void headerDrawn() {
+		drawnFlagsLeft = mines - getTotalFlags();
+		drawnSeconds = getElapsedTime();
+		drawnFace = getFaceState();
+	}
+
+	// Hands back the bounds of the flag counter, the timer and the face, whichever changed since
+	// they were drawn, so a tick of the clock only repaints the timer. The regions are redrawn
+	// whole through drawRegion, which keeps them exact where narrow boards overlap them.
+	private void redrawHeader(HeaderRegion region) {
+		int flagsLeft = mines - getTotalFlags();
+		long seconds = getElapsedTime();
+		int face = getFaceState();
+
+		if (flagsLeft != drawnFlagsLeft) {
+			drawnFlagsLeft = flagsLeft;
+			region.redraw(11, 12, 25 * 3 + 3, 46);
+		}
+
+		if (seconds != drawnSeconds) {
+			drawnSeconds = seconds;
+			region.redraw(getWidth() * 20 - 69, 12, 25 * 3 + 3, 46);
+		}
+
+		if (face != drawnFace) {
+			drawnFace = face;
+			region.redraw(getWidth() * 10 - 10, 15, 40, 40);
+		}
+	}
+
+	public void invalidate() {
+		dirty.markAll();
+	}
+
+	// Told whenever something drawn changes, so frames are only drawn when they would differ
+	public void setChangeListener(Runnable changeListener) {
+		this.changeListener = changeListener;
+		this.dirty.setListener(changeListener);
+	}
+
+	// How long until the timer shows a new value, or -1 while it is stopped
+	public long getMillisUntilTick() {
+		if (!gameLive || !officiallyStarted || clockStopped) {
+			return -1;
+		}
+
+		long second = TimeUnit.SECONDS.toNanos(1);
+
+		// Rounded up, so a frame asked for on time never lands just before the tick
+		return TimeUnit.NANOSECONDS.toMillis(second - Math.floorMod(System.nanoTime() - startNanos, second) + 999_999);
+	}
+
+	// The face is drawn from the mouse and button state, even when no cell changes with it
+	private void faceChanged() {
+		if (changeListener != null) {
+			changeListener.run();
+		}
+	}
+
+	// The seven layer passes one after another, each walking the visible range on its own
+	public void drawLayers(Graphics2D g, boolean realGame) {
 		drawCells(g, realGame);
 		drawPortalCells(g, realGame);
 		drawFlags(g, realGame);
@@ -476,36 +1138,264 @@ public class GameState {
 		drawLinesConnectingPortals(g, realGame);
 		drawPortals(g, realGame);
 		drawMineCount(g, realGame);
+	}
 
-		boolean won = true;
+	// Same output as drawLayers for the cells given, visiting each cell once. Lines sit above the
+	// first four layers of every cell they cross but under every portal and number, so while a
+	// line crosses the region those two layers are held back until the lines are down.
+	private void drawBoard(Graphics2D g, boolean realGame, int x0, int y0, int x1, int y1, int px, int py, int pw, int ph) {
+		int ox = realGame ? 10 : 0;
+		int oy = realGame ? 70 : 0;
 
-		m: for (int x = 0; x < getWidth(); x++) {
-			for (int y = 0; y < getHeight(); y++) {
-				if (!gameLive) {
-					if (isMine(x, y)) {
-						if (isRevealed(x, y) || !isFlagged(x, y)) {
-							won = false;
-							break m;
-						}
+		boolean holdBack = false;
+
+		for (int i = 0; i < shownCount && !holdBack; i++) {
+			holdBack = isLineInRegion(shownLines[i] * 2, px, py, pw, ph);
+		}
+
+		int held = 0;
+
+		cellsDrawn += (long) Math.max(x1 - x0, 0) * Math.max(y1 - y0, 0);
+
+		for (int x = x0; x < x1; x++) {
+			for (int y = y0; y < y1; y++) {
+				int dx = x * 20 + ox;
+				int dy = y * 20 + oy;
+
+				int e = this.portalIndex.size() > 0 ? this.portalIndex.find(x, y) : -1;
+				boolean revealed = isRevealed(x, y);
+
+				drawUnderlay(g, x, y, dx, dy, e, revealed);
+
+				if (!holdBack) {
+					drawOverlay(g, x, y, dx, dy, e, revealed);
+				} else if (revealed || (e >= 0 && !gameLive)) {
+					if (held == heldCells.length) {
+						heldCells = Arrays.copyOf(heldCells, Math.max(held * 2, 64));
 					}
+
+					heldCells[held++] = y * width + x;
 				}
 			}
 		}
 
-		if (realGame) {
-			drawGame(g, won);
+		if (holdBack) {
+			g.setColor(LINE_COLOR);
+
+			for (int i = 0; i < shownCount; i++) {
+				if (isLineInRegion(shownLines[i] * 2, px, py, pw, ph)) {
+					drawLine(g, shownLines[i] * 2);
+				}
+			}
+
+			for (int i = 0; i < held; i++) {
+				int x = heldCells[i] % width;
+				int y = heldCells[i] / width;
+
+				drawOverlay(g, x, y, x * 20 + ox, y * 20 + oy, this.portalIndex.find(x, y), isRevealed(x, y));
+			}
 		}
+	}
 
-		g.dispose();
+	// Base cell, portal highlight, flag and end screen: every layer drawn before the lines
+	private void drawUnderlay(Graphics2D g, int x, int y, int dx, int dy, int e, boolean revealed) {
+		drawCell(g, x, y, dx, dy);
+
+		if (e >= 0) {
+			if (x == mouseX && y == mouseY) {
+				drawPortalHover(g, e, revealed, dx, dy);
+			} else if (this.portalIndex.getCell(PortalIndex.partner(e)) == mouseY * width + mouseX && isDrawn(mouseX, mouseY)) {
+				drawPortalPartner(g, e, revealed, dx, dy);
+			}
+		}
+
+		if (revealed) {
+			if (!gameLive && isMine(x, y)) {
+				drawSprite(g, PweeperMain.ATLAS.get(Sprite.MINE_REVEALED), dx, dy);
+			}
+		} else {
+			boolean flagged = isFlagged(x, y);
+			boolean mine = !gameLive && isMine(x, y);
+
+			if (flagged) {
+				if (gameLive || e < 0) {
+					drawSprite(g, PweeperMain.ATLAS.get(Sprite.FLAG), dx, dy);
+				}
+
+				if (!gameLive && !mine) {
+					drawSprite(g, PweeperMain.ATLAS.get(Sprite.CELL_WRONG), dx, dy);
+				}
+			}
+
+			if (mine) {
+				drawSprite(g, PweeperMain.ATLAS.get(flagged ? Sprite.MINE_CORRECT : Sprite.MINE), dx, dy);
+			}
+		}
+	}
+
+	// Portal and number: the layers drawn after the lines
+	private void drawOverlay(Graphics2D g, int x, int y, int dx, int dy, int e, boolean revealed) {
+		if (e >= 0 && (revealed || !gameLive)) {
+			drawSprite(g, PweeperMain.ATLAS.get(PortalIndex.isSideA(e) ? Sprite.PORTAL_A : Sprite.PORTAL_B), dx, dy);
+		}
+
+		if (revealed && !isMine(x, y)) {
+			int n = e < 0 ? getSurrounding(x, y) : getPortalMarks(x, y);
+
+			if (n > 0 && n <= 64) {
+				if (e >= 0 && n == 1) {
+					n = 0;
+				}
+
+				drawSprite(g, PweeperMain.ATLAS.number(n), dx, dy);
+			}
+		}
+	}
+
+	// Draws every layer that can touch the cell, clipped to it, in the same order as the full frame
+	private void redrawCell(Graphics2D g, int cell, boolean realGame) {
+		int x = cell % width;
+		int y = cell / width;
+
+		if (!isDrawn(x, y)) {
+			return;
+		}
+
+		int dx = x * 20 + (realGame ? 10 : 0);
+		int dy = y * 20 + (realGame ? 70 : 0);
+
+		g.setClip(dx, dy, 20, 20);
+		g.clearRect(dx, dy, 20, 20);
+
+		cellsDrawn++;
+
+		int e = this.portalIndex.find(x, y);
+		boolean revealed = isRevealed(x, y);
+
+		drawUnderlay(g, x, y, dx, dy, e, revealed);
+
+		g.setColor(LINE_COLOR);
+
+		for (int i = 0; i < shownCount; i++) {
+			if (isLineInRegion(shownLines[i] * 2, dx, dy, 20, 20)) {
+				drawLine(g, shownLines[i] * 2);
+			}
+		}
+
+		drawOverlay(g, x, y, dx, dy, e, revealed);
+	}
+
+	private void drawSprite(Graphics2D g, BufferedImage sprite, int dx, int dy) {
+		g.drawImage(sprite, dx, dy, null);
+		spritesDrawn++;
+	}
+
+	public long getCellsDrawn() {
+		return cellsDrawn;
+	}
+
+	public long getSpritesDrawn() {
+		return spritesDrawn;
+	}
+
+	private boolean isDrawn(int x, int y) {
+		return x >= drawnX0 && y >= drawnY0 && x < drawnX1 && y < drawnY1;
+	}
+
+	// Each end in the drawn range draws the line towards the other, as drawLineConnectingPortal does
+	private void drawLine(Graphics2D g, int a) {
+		int ax = this.portalIndex.getX(a);
+		int ay = this.portalIndex.getY(a);
+		int bx = this.portalIndex.getX(a + 1);
+		int by = this.portalIndex.getY(a + 1);
+
+		if (isDrawn(ax, ay)) {
+			g.drawLine(ax * 20 + 20, ay * 20 + 80, bx * 20 + 20, by * 20 + 80);
+		}
+
+		if (isDrawn(bx, by)) {
+			g.drawLine(bx * 20 + 20, by * 20 + 80, ax * 20 + 20, ay * 20 + 80);
+		}
+	}
+
+	// Whether any pixel the line could draw falls inside the region, in canvas coordinates
+	private boolean isLineInRegion(int a, int px, int py, int pw, int ph) {
+		int ax = this.portalIndex.getX(a);
+		int ay = this.portalIndex.getY(a);
+		int bx = this.portalIndex.getX(a + 1);
+		int by = this.portalIndex.getY(a + 1);
+
+		if (!isDrawn(ax, ay) && !isDrawn(bx, by)) {
+			return false;
+		}
+
+		return Math.min(ax, bx) * 20 + 20 < px + pw && Math.max(ax, bx) * 20 + 20 >= px && Math.min(ay, by) * 20 + 80 < py + ph && Math.max(ay, by) * 20 + 80 >= py;
+	}
+
+	// Rebuilds the list of visible portal lines, marking the cells under any that appeared or vanished
+	private void updateLines(boolean markChanges, boolean realGame) {
+		int pairs = this.portalIndex.size();
+
+		if (linesShown.length < pairs) {
+			linesShown = new boolean[pairs];
+			shownLines = new int[pairs];
+			markChanges = false;
+		}
+
+		shownCount = 0;
+
+		for (int n = 0; n < pairs; n++) {
+			boolean shown = isLineShown(n * 2);
+
+			// The partner highlight follows the same rule as the line, so both ends change too
+			if (markChanges && shown != linesShown[n]) {
+				dirty.mark(this.portalIndex.getCell(n * 2));
+				dirty.mark(this.portalIndex.getCell(n * 2 + 1));
+				markLine(n * 2, realGame);
+			}
+
+			linesShown[n] = shown;
+
+			if (shown) {
+				shownLines[shownCount++] = n;
+			}
+		}
+
+		linesStale = false;
+	}
+
+	// Walks the line a pixel at a time and marks every cell within two pixels of it
+	private void markLine(int e, boolean realGame) {
+		int ox = realGame ? 10 : 0;
+		int oy = realGame ? 70 : 0;
+
+		int ax = this.portalIndex.getX(e) * 20 + 20;
+		int ay = this.portalIndex.getY(e) * 20 + 80;
+		int bx = this.portalIndex.getX(e + 1) * 20 + 20;
+		int by = this.portalIndex.getY(e + 1) * 20 + 80;
+
+		int steps = Math.max(Math.max(Math.abs(bx - ax), Math.abs(by - ay)), 1);
+
+		for (int i = 0; i <= steps; i++) {
+			int px = ax + (bx - ax) * i / steps - ox;
+			int py = ay + (by - ay) * i / steps - oy;
+
+			dirty.mark(Math.floorDiv(px - 2, 20), Math.floorDiv(py - 2, 20));
+			dirty.mark(Math.floorDiv(px + 2, 20), Math.floorDiv(py - 2, 20));
+			dirty.mark(Math.floorDiv(px - 2, 20), Math.floorDiv(py + 2, 20));
+			dirty.mark(Math.floorDiv(px + 2, 20), Math.floorDiv(py + 2, 20));
+		}
 	}
 
 	public void drawCells(boolean realGame, RenderCall call) {
 
-		Int2 min = getDrawMin();
-		Int2 max = getDrawMax();
+		int x0 = Math.max(getDrawMinX() - 1, 0);
+		int y0 = Math.max(getDrawMinY() - 1, 0);
+		int x1 = Math.min(getDrawMaxX() + 1, getWidth());
+		int y1 = Math.min(getDrawMaxY() + 1, getHeight());
 
-		for (int x = Math.max(min.x - 1, 0); x < Math.min(max.x + 1, getWidth()); x++) {
-			for (int y = Math.max(min.y - 1, 0); y < Math.min(max.y + 1, getHeight()); y++) {
+		for (int x = x0; x < x1; x++) {
+			for (int y = y0; y < y1; y++) {
 				int dx = x * 20 + (realGame ? 10 : 0);
 				int dy = y * 20 + (realGame ? 70 : 0);
 
@@ -514,17 +1404,57 @@ public class GameState {
 		}
 	}
 
+	// Without a controller (headless or offscreen) the whole board is drawn
 	public Int2 getDrawMin() {
-		return controller.getCell(new Int2(0, 0));
+		return new Int2(getDrawMinX(), getDrawMinY());
 	}
 
 	public Int2 getDrawMax() {
-		return controller.getCell(new Int2(controller.drawPanel.getWidth(), controller.drawPanel.getHeight()));
+		return new Int2(getDrawMaxX(), getDrawMaxY());
+	}
+
+	public int getDrawMinX() {
+		return controller == null ? 0 : controller.getCellX(0);
+	}
+
+	public int getDrawMinY() {
+		return controller == null ? 0 : controller.getCellY(0);
+	}
+
+	public int getDrawMaxX() {
+		return controller == null ? width : controller.getCellX(controller.drawPanel.getWidth());
+	}
+
+	public int getDrawMaxY() {
+		return controller == null ? height : controller.getCellY(controller.drawPanel.getHeight());
 	}
 
 	public void setMouse(int mouseX, int mouseY) {
-		this.mouseX = mouseX;
-		this.mouseY = mouseY;
+		if (mouseX != this.mouseX || mouseY != this.mouseY) {
+			markMouse();
+			this.mouseX = mouseX;
+			this.mouseY = mouseY;
+			markMouse();
+
+			if (clicked) {
+				faceChanged();
+			}
+		}
+	}
+
+	// The pressed cells and the partner highlight both follow the mouse
+	private void markMouse() {
+		if (clicked && around) {
+			dirty.markAround(mouseX, mouseY);
+		} else {
+			dirty.mark(mouseX, mouseY);
+		}
+
+		int e = this.portalIndex.find(mouseX, mouseY);
+
+		if (e >= 0) {
+			dirty.mark(this.portalIndex.getCell(PortalIndex.partner(e)));
+		}
 	}
 
 	public int getMouseX() {
@@ -536,11 +1466,21 @@ public class GameState {
 	}
 
 	public void setClicked(boolean clicked) {
-		this.clicked = clicked;
+		if (clicked != this.clicked) {
+			markMouse();
+			this.clicked = clicked;
+			markMouse();
+			faceChanged();
+		}
 	}
 
 	public void setAround(boolean around) {
-		this.around = around;
+		if (around != this.around) {
+			markMouse();
+			this.around = around;
+			markMouse();
+			faceChanged();
+		}
 	}
 
 	public boolean isAroundMouse(int x, int y) {
@@ -548,57 +1488,15 @@ public class GameState {
 	}
 
 	public int getSurroundingMines(int x, int y) {
-		int count = 0;
-
-		for (int dx = -1; dx <= 1; dx++) {
-			for (int dy = -1; dy <= 1; dy++) {
-				if (!(dx == 0 && dy == 0)) {
-					if (isMine(x + dx, y + dy)) {
-						count++;
-					}
-				}
-			}
-		}
-
-		return count;
+		return isInBounds(x, y) ? getNeighborCounts().getMines(x, y) : 0;
 	}
 
 	public int getSurroundingFlags(int x, int y) {
-		int count = 0;
-
-		for (int dx = -1; dx <= 1; dx++) {
-			for (int dy = -1; dy <= 1; dy++) {
-				if (!(dx == 0 && dy == 0)) {
-					if (isFlagged(x + dx, y + dy)) {
-						count++;
-					}
-				}
-			}
-		}
-
-		return count;
+		return isInBounds(x, y) ? getNeighborCounts().getFlags(x, y) : 0;
 	}
 
 	public int getSurrounding(int x, int y) {
-		int count = 0;
-
-		for (int dx = -1; dx <= 1; dx++) {
-			for (int dy = -1; dy <= 1; dy++) {
-				if (!(dx == 0 && dy == 0)) {
-					if (isMine(x + dx, y + dy)) {
-						count++;
-					} else if (isPortal(x + dx, y + dy)) {
-						if (portalState(x + dx, y + dy)) {
-							count += getSurroundingMines(this.portalsMap.get(new Int2(x + dx, y + dy)).x, this.portalsMap.get(new Int2(x + dx, y + dy)).y);
-						} else {
-							count += getSurroundingMines(inv(this.portalsMap).get(new Int2(x + dx, y + dy)).x, inv(this.portalsMap).get(new Int2(x + dx, y + dy)).y);
-						}
-					}
-				}
-			}
-		}
-
-		return count;
+		return isInBounds(x, y) ? getNeighborCounts().getSurrounding(x, y) : 0;
 	}
 
 	public boolean isCellUnambiguous(int x, int y) {
@@ -647,18 +1545,18 @@ public class GameState {
 	public boolean canAutoReveal(int x, int y) {
 		if (isRevealed(x, y) && !isPortal(x, y)) {
 
-			int flagCount = 0;
+			int flagCount = getSurroundingFlags(x, y);
 			int marksCount = 0;
 
-			for (int dx = -1; dx <= 1; dx++) {
-				for (int dy = -1; dy <= 1; dy++) {
-					if (!(dx == 0 && dy == 0)) {
-						if (isFlagged(x + dx, y + dy)) {
-							flagCount++;
-						} else if (isRevealed(x + dx, y + dy) && isPortal(x + dx, y + dy)) {
-							int m = getPortalMarks(x + dx, y + dy);
-							if (m != 1) {
-								marksCount += m;
+			if (getNeighborCounts().isNearPortal(x, y)) {
+				for (int dx = -1; dx <= 1; dx++) {
+					for (int dy = -1; dy <= 1; dy++) {
+						if (!(dx == 0 && dy == 0)) {
+							if (!isFlagged(x + dx, y + dy) && isRevealed(x + dx, y + dy) && isPortal(x + dx, y + dy)) {
+								int m = getPortalMarks(x + dx, y + dy);
+								if (m != 1) {
+									marksCount += m;
+								}
 							}
 						}
 					}
@@ -672,30 +1570,60 @@ public class GameState {
 		return false;
 	}
 
-	public int getTotalFlags() {
-		int flags = 0;
+	// Reveals every unflagged neighbour of a number whose flags are all placed, as a middle click
+	// or double click does. Returns how many cells were opened.
+	public int autoReveal(int x, int y) {
+		if (!canAutoReveal(x, y)) {
+			return 0;
+		}
+
+		// The chord is one move, and replaying it opens the same neighbours again
+		MoveJournal journal = this.journal;
+
+		if (journal != null) {
+			journal.record(MoveJournal.CHORD, x, y);
+			this.journal = null;
+		}
 
-		for (int x = 0; x < getWidth(); x++) {
-			for (int y = 0; y < getHeight(); y++) {
-				if (isFlagged(x, y)) {
-					flags++;
+		GameEvents.AutoReveal event = new GameEvents.AutoReveal();
+		event.begin();
+
+		int opened = 0;
+
+		for (int dx = -1; dx <= 1; dx++) {
+			for (int dy = -1; dy <= 1; dy++) {
+				if (!(dx == 0 && dy == 0)) {
+					if (!isFlagged(x + dx, y + dy)) {
+						opened += reveal(x + dx, y + dy);
+					}
 				}
 			}
 		}
-		return flags;
+
+		event.end();
+
+		this.journal = journal;
+
+		if (event.shouldCommit()) {
+			event.x = x;
+			event.y = y;
+			event.cellsOpened = opened;
+			event.commit();
+		}
+
+		return opened;
+	}
+
+	public int getTotalFlags() {
+		return totalFlags;
 	}
 
 	public int getTotalRevealed() {
-		int revealed = 0;
+		return totalRevealed;
+	}
 
-		for (int x = 0; x < getWidth(); x++) {
-			for (int y = 0; y < getHeight(); y++) {
-				if (isRevealed(x, y)) {
-					revealed++;
-				}
-			}
-		}
-		return revealed;
+	public int getCorrectFlags() {
+		return correctFlags;
 	}
 
 	public boolean isInBounds(int x, int y) {
@@ -718,6 +1646,28 @@ public class GameState {
 		return portals;
 	}
 
+	public long getSeed() {
+		return seed;
+	}
+
+	// Every mine has to fit outside the 3x3 block the first click keeps clear
+	public static int getMaxMines(int width, int height) {
+		return Math.max(width * height - 9, 0);
+	}
+
+	// For a snapshot restored into this game, so it deals again the way the saved one would
+	void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	public MoveJournal getJournal() {
+		return journal;
+	}
+
+	public void setJournal(MoveJournal journal) {
+		this.journal = journal;
+	}
+
 	public int getPermissions() {
 		return permissions;
 	}
@@ -736,13 +1686,14 @@ public class GameState {
 
 	}
 
-	public static <K, V> Map<V, K> inv(Map<K, V> map) {
-		return Map.copyOf(map.entrySet().stream().collect(Collectors.toMap(Map.Entry::getValue, Map.Entry::getKey)));
-	}
-
 	@FunctionalInterface
 	public static interface RenderCall {
 		void accept(int x, int y, int dx, int dy);
 	}
 
+	@FunctionalInterface
+	private static interface HeaderRegion {
+		void redraw(int x, int y, int width, int height);
+	}
+
 }
@@ -3,6 +3,7 @@ package net.ludocrypt.pweeper.game;
 import java.awt.Graphics2D;
 
 import net.ludocrypt.pweeper.PweeperMain;
+import net.ludocrypt.pweeper.render.Sprite;
 
 public class MinesOnlyGame extends GameState {
 
@@ -13,7 +14,7 @@ public class MinesOnlyGame extends GameState {
     @Override
     public int reveal(int x, int y) {
         if (isInBounds(x, y)) {
-            mineGrid[x][y] = !mineGrid[x][y];
+            setMine(x, y, !mineGrid.get(x, y));
         }
         return 0;
     }
@@ -21,25 +22,17 @@ public class MinesOnlyGame extends GameState {
     @Override
     public boolean isRevealed(int x, int y) {
         if (isInBounds(x, y)) {
-            return !mineGrid[x][y];
+            return !mineGrid.get(x, y);
         }
         return true;
     }
 
     @Override
-    public void drawCells(Graphics2D g, boolean realGame) {
-        for (int x = 0; x < getWidth(); x++) {
-            for (int y = 0; y < getHeight(); y++) {
-                int dx = x * 20 + (realGame ? 10 : 0);
-                int dy = y * 20 + (realGame ? 70 : 0);
-
-                if (isRevealed(x, y)) {
-                    g.drawImage(PweeperMain.SPRITES.get("CellRevealed"), dx, dy, null);
-                } else {
-                    g.drawImage(PweeperMain.SPRITES.get("Mine"), dx, dy, null);
-                }
-
-            }
+    public void drawCell(Graphics2D g, int x, int y, int dx, int dy) {
+        if (isRevealed(x, y)) {
+            g.drawImage(PweeperMain.ATLAS.get(Sprite.CELL_REVEALED), dx, dy, null);
+        } else {
+            g.drawImage(PweeperMain.ATLAS.get(Sprite.MINE), dx, dy, null);
         }
     }
 
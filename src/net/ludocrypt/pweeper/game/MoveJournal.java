@@ -0,0 +1,349 @@
+package net.ludocrypt.pweeper.game;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+// An append-only log of the moves made on one board, enough to play the game again straight
+// into a GameState without the mouse controller or Swing. It starts from the board's seed, or
+// from a whole snapshot for boards a seed cannot deal. Each move is then its kind, the cell it
+// was made on and the time since the move before, with the cell and time stored as deltas in
+// varints, so most moves take two or three bytes.
+//
+// Header, big-endian: magic, version (ints), origin (byte), then for a seed the width, height,
+// mines, portals, permissions (ints) and seed (long), or for a snapshot its length (int) and
+// bytes. Each move is varint(zigzag(cell delta) << 3 | kind) and varint(micros since the last).
+public class MoveJournal {
+	public static final int MAGIC = 0x50574D4A;
+	public static final int VERSION = 1;
+
+	public static final int REVEAL = 0, FLAG = 1, MARK_UP = 2, MARK_DOWN = 3, CHORD = 4;
+	private static final int KIND_BITS = 3;
+
+	private static final int FROM_SEED = 0, FROM_SNAPSHOT = 1;
+
+	private byte[] bytes = new byte[256];
+	private int size;
+
+	// Where the moves start, after the header
+	private int start;
+	private int width;
+	private int moves;
+
+	private int lastCell;
+	private long lastNanos;
+
+	// Starts from the seed while the board is still the one the seed deals, and from a snapshot
+	// once it has been played
+	public MoveJournal(GameState game) {
+		this(game, game.officiallyStarted || game.getTotalFlags() > 0);
+	}
+
+	// Boards changed in ways their seed does not cover, like hand-made ones, need the snapshot
+	public MoveJournal(GameState game, boolean snapshot) {
+		ByteBuffer header;
+
+		if (snapshot) {
+			byte[] saved = snapshotBytes(game);
+
+			header = ByteBuffer.allocate(13 + saved.length);
+			header.putInt(MAGIC);
+			header.putInt(VERSION);
+			header.put((byte) FROM_SNAPSHOT);
+			header.putInt(saved.length);
+			header.put(saved);
+		} else {
+			header = ByteBuffer.allocate(37);
+			header.putInt(MAGIC);
+			header.putInt(VERSION);
+			header.put((byte) FROM_SEED);
+			header.putInt(game.width);
+			header.putInt(game.height);
+			header.putInt(game.mines);
+			header.putInt(game.portals);
+			header.putInt(game.permissions);
+			header.putLong(game.getSeed());
+		}
+
+		append(header.array(), header.position());
+
+		this.start = size;
+		this.width = game.width;
+		this.lastNanos = System.nanoTime();
+	}
+
+	private MoveJournal() {
+	}
+
+	public void record(int kind, int x, int y) {
+		int cell = y * width + x;
+		long now = System.nanoTime();
+
+		long delta = cell - lastCell;
+
+		putVarint(((delta << 1) ^ (delta >> 63)) << KIND_BITS | kind);
+		putVarint(Math.max(now - lastNanos, 0) / 1000);
+
+		lastCell = cell;
+		lastNanos = now;
+		moves++;
+	}
+
+	// The board the journal starts from, before any of its moves
+	public GameState createGame() {
+		ByteBuffer header = ByteBuffer.wrap(bytes, 0, start);
+		header.position(9);
+
+		if (bytes[8] == FROM_SNAPSHOT) {
+			int length = header.getInt();
+
+			try {
+				return GameSnapshot.read(Channels.newChannel(new ByteArrayInputStream(bytes, header.position(), length)));
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		return new GameState(header.getInt(), header.getInt(), header.getInt(), header.getInt(), header.getInt(), header.getLong());
+	}
+
+	// Plays every move into the game as fast as it will go. The game should be one createGame
+	// made, and should not have a journal of its own.
+	public void replay(GameState game) {
+		replay(game, begin(), Integer.MAX_VALUE);
+	}
+
+	public GameState replay() {
+		GameState game = createGame();
+		replay(game);
+		return game;
+	}
+
+	public Cursor begin() {
+		return new Cursor(0, start, 0, 0);
+	}
+
+	// Plays up to the given number of moves on from the cursor, into a game that has had exactly
+	// the moves before it, and returns where it stopped
+	public Cursor replay(GameState game, Cursor from, int count) {
+		int move = from.move();
+		int position = from.offset();
+		int cell = from.cell();
+		long micros = from.micros();
+
+		long end = (long) move + count;
+
+		while (position < size && move < end) {
+			long value = 0;
+			int shift = 0;
+			byte b;
+
+			do {
+				b = bytes[position++];
+				value |= (long) (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+
+			shift = 0;
+
+			do {
+				b = bytes[position++];
+				micros += (long) (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+
+			int kind = (int) (value & ((1 << KIND_BITS) - 1));
+			long zigzag = value >>> KIND_BITS;
+			cell += (int) ((zigzag >>> 1) ^ -(zigzag & 1));
+
+			int x = cell % width;
+			int y = cell / width;
+
+			switch (kind) {
+				case REVEAL -> game.reveal(x, y);
+				case FLAG -> game.toggleFlag(x, y);
+				case MARK_UP -> game.increaseMark(x, y);
+				case MARK_DOWN -> game.decreaseMark(x, y);
+				case CHORD -> game.autoReveal(x, y);
+				default -> throw new IllegalStateException("Unknown move kind " + kind);
+			}
+
+			move++;
+		}
+
+		return new Cursor(move, position, cell, micros);
+	}
+
+	public int getMoves() {
+		return moves;
+	}
+
+	public int getSize() {
+		return size;
+	}
+
+	public void write(WritableByteChannel channel) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, size);
+
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	public static MoveJournal read(ReadableByteChannel channel) throws IOException {
+		MoveJournal journal = new MoveJournal();
+		ByteBuffer buffer = ByteBuffer.wrap(journal.bytes);
+
+		while (channel.read(buffer) >= 0) {
+			if (!buffer.hasRemaining()) {
+				journal.bytes = Arrays.copyOf(journal.bytes, journal.bytes.length * 2);
+				buffer = ByteBuffer.wrap(journal.bytes, buffer.position(), journal.bytes.length - buffer.position());
+			}
+		}
+
+		journal.size = buffer.position();
+
+		ByteBuffer header = ByteBuffer.wrap(journal.bytes, 0, journal.size);
+
+		if (journal.size < 9 || header.getInt() != MAGIC) {
+			throw new IOException("Not a move journal");
+		}
+
+		int version = header.getInt();
+
+		if (version != VERSION) {
+			throw new IOException("Unsupported journal version " + version);
+		}
+
+		int origin = header.get();
+		int width, height, mines;
+
+		if (origin == FROM_SNAPSHOT) {
+			if (journal.size < 13) {
+				throw new IOException("Corrupt journal header");
+			}
+
+			int length = header.getInt();
+
+			// The snapshot's own header, which GameSnapshot checks in full when the game is made
+			if (length < 49 || length > journal.size - 13 || header.getInt(13) != GameSnapshot.MAGIC) {
+				throw new IOException("Corrupt journal snapshot");
+			}
+
+			width = header.getInt(13 + 8);
+			height = header.getInt(13 + 12);
+			mines = header.getInt(13 + 16);
+			journal.start = 13 + length;
+		} else if (origin == FROM_SEED) {
+			if (journal.size < 37) {
+				throw new IOException("Corrupt journal header");
+			}
+
+			width = header.getInt();
+			height = header.getInt();
+			mines = header.getInt();
+			journal.start = 37;
+		} else {
+			throw new IOException("Unknown journal origin " + origin);
+		}
+
+		if (width <= 0 || height <= 0 || (long) width * height > Integer.MAX_VALUE || mines < 0 || mines > GameState.getMaxMines(width, height)) {
+			throw new IOException("Corrupt journal header");
+		}
+
+		journal.width = width;
+		journal.scan(width * height);
+
+		return journal;
+	}
+
+	// Counts the moves of a journal that was read, checking each lands on the board, and picks up
+	// where it left off
+	private void scan(int cells) throws IOException {
+		int position = start;
+
+		while (position < size) {
+			long value = 0;
+			int shift = 0;
+			byte b;
+
+			do {
+				if (position >= size || shift > 63) {
+					throw new IOException("Corrupt move " + moves);
+				}
+
+				b = bytes[position++];
+				value |= (long) (b & 0x7F) << shift;
+				shift += 7;
+			} while (b < 0);
+
+			shift = 0;
+
+			do {
+				if (position >= size || shift > 63) {
+					throw new IOException("Corrupt move " + moves);
+				}
+
+				shift += 7;
+			} while (bytes[position++] < 0);
+
+			long zigzag = value >>> KIND_BITS;
+			long cell = lastCell + ((zigzag >>> 1) ^ -(zigzag & 1));
+
+			if ((value & ((1 << KIND_BITS) - 1)) > CHORD || cell < 0 || cell >= cells) {
+				throw new IOException("Corrupt move " + moves);
+			}
+
+			lastCell = (int) cell;
+			moves++;
+		}
+
+		lastNanos = System.nanoTime();
+	}
+
+	private void putVarint(long value) {
+		if (size + 10 > bytes.length) {
+			bytes = Arrays.copyOf(bytes, bytes.length * 2);
+		}
+
+		while ((value & ~0x7FL) != 0) {
+			bytes[size++] = (byte) ((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+
+		bytes[size++] = (byte) value;
+	}
+
+	private void append(byte[] data, int length) {
+		if (size + length > bytes.length) {
+			bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + length));
+		}
+
+		System.arraycopy(data, 0, bytes, size, length);
+		size += length;
+	}
+
+	private static byte[] snapshotBytes(GameState game) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		try {
+			GameSnapshot.write(game, Channels.newChannel(out));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+
+		return out.toByteArray();
+	}
+
+	// A place between two moves: how many came before it, where the next starts, and the cell and
+	// time the next one's deltas count from
+	public static record Cursor(int move, int offset, int cell, long micros) {
+	}
+
+}
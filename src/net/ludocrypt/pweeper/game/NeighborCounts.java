@@ -0,0 +1,111 @@
+package net.ludocrypt.pweeper.game;
+
+import java.util.Arrays;
+
+public class NeighborCounts {
+	private final int width, height;
+
+	// Low nibble is the plain mine count, high nibble the flag count
+	private final byte[] neighbors;
+	// Portal-aware count, as drawn on revealed cells
+	private final byte[] surrounding;
+	private final BitGrid nearPortal;
+
+	public NeighborCounts(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.neighbors = new byte[width * height];
+		this.surrounding = new byte[width * height];
+		this.nearPortal = new BitGrid(width, height);
+	}
+
+	public void rebuild(BitGrid mineGrid, BitGrid flagged, PortalIndex portalIndex) {
+		Arrays.fill(neighbors, (byte) 0);
+
+		addAround(mineGrid, 1);
+		addAround(flagged, 16);
+
+		for (int i = 0; i < surrounding.length; i++) {
+			surrounding[i] = (byte) (neighbors[i] & 15);
+		}
+
+		nearPortal.clear();
+
+		for (int e = 0; e < portalIndex.size() * 2; e++) {
+			int cell = portalIndex.getCell(e);
+
+			int x = cell % width;
+			int y = cell / width;
+
+			int through = mineGrid.get(cell) ? 0 : getMines(portalIndex.getCell(PortalIndex.partner(e)));
+
+			for (int dx = -1; dx <= 1; dx++) {
+				for (int dy = -1; dy <= 1; dy++) {
+					if (!(dx == 0 && dy == 0) && isInBounds(x + dx, y + dy)) {
+						int n = (y + dy) * width + x + dx;
+						surrounding[n] += through;
+						nearPortal.set(n, true);
+					}
+				}
+			}
+		}
+	}
+
+	private void addAround(BitGrid grid, int amount) {
+		long[] words = grid.words();
+
+		for (int w = 0; w < words.length; w++) {
+			long word = words[w];
+
+			while (word != 0) {
+				int cell = (w << 6) + Long.numberOfTrailingZeros(word);
+				word &= word - 1;
+
+				add(cell % width, cell / width, amount);
+			}
+		}
+	}
+
+	public void flagChanged(int x, int y, boolean flagged) {
+		add(x, y, flagged ? 16 : -16);
+	}
+
+	private void add(int x, int y, int amount) {
+		for (int dx = -1; dx <= 1; dx++) {
+			for (int dy = -1; dy <= 1; dy++) {
+				if (!(dx == 0 && dy == 0) && isInBounds(x + dx, y + dy)) {
+					neighbors[(y + dy) * width + x + dx] += amount;
+				}
+			}
+		}
+	}
+
+	public int getMines(int cell) {
+		return neighbors[cell] & 15;
+	}
+
+	public int getMines(int x, int y) {
+		return getMines(y * width + x);
+	}
+
+	public int getFlags(int x, int y) {
+		return (neighbors[y * width + x] & 0xFF) >>> 4;
+	}
+
+	public int getSurrounding(int cell) {
+		return surrounding[cell];
+	}
+
+	public int getSurrounding(int x, int y) {
+		return getSurrounding(y * width + x);
+	}
+
+	public boolean isNearPortal(int x, int y) {
+		return nearPortal.get(x, y);
+	}
+
+	private boolean isInBounds(int x, int y) {
+		return x >= 0 && y >= 0 && x < width && y < height;
+	}
+
+}
@@ -0,0 +1,156 @@
+package net.ludocrypt.pweeper.game;
+
+import java.util.Arrays;
+
+public class PortalIndex {
+	private final int width, height;
+
+	// Open addressed cell -> endpoint table, keys are stored as cell + 1 so 0 means empty
+	private int[] keys;
+	private int[] values;
+	private int mask;
+
+	// Endpoint 2n is the A side of pair n and 2n + 1 is its B side
+	private int[] cells;
+	private byte[] marks;
+	private int pairs;
+
+	public PortalIndex(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.keys = new int[16];
+		this.values = new int[16];
+		this.mask = 15;
+		this.cells = new int[8];
+		this.marks = new byte[8];
+	}
+
+	public void put(int ax, int ay, int bx, int by) {
+		int a = pairs * 2;
+
+		if (a + 2 > cells.length) {
+			cells = Arrays.copyOf(cells, cells.length * 2);
+			marks = Arrays.copyOf(marks, marks.length * 2);
+		}
+
+		if ((a + 2) * 2 > keys.length) {
+			rehash(keys.length * 2);
+		}
+
+		cells[a] = ay * width + ax;
+		cells[a + 1] = by * width + bx;
+		marks[a] = 0;
+		marks[a + 1] = 0;
+		insert(cells[a], a);
+		insert(cells[a + 1], a + 1);
+		pairs++;
+	}
+
+	// Grows the tables once up front, for callers that know how many pairs are coming
+	public void ensureCapacity(int pairs) {
+		if (pairs * 2 > cells.length) {
+			cells = Arrays.copyOf(cells, pairs * 2);
+			marks = Arrays.copyOf(marks, pairs * 2);
+		}
+
+		if (pairs * 4 > keys.length) {
+			rehash(Integer.highestOneBit(pairs * 4 - 1) * 2);
+		}
+	}
+
+	public int find(int x, int y) {
+		if (x < 0 || y < 0 || x >= width || y >= height) {
+			return -1;
+		}
+
+		int key = y * width + x + 1;
+
+		for (int i = hash(key) & mask;; i = (i + 1) & mask) {
+			int k = keys[i];
+
+			if (k == key) {
+				return values[i];
+			} else if (k == 0) {
+				return -1;
+			}
+		}
+	}
+
+	public boolean contains(int x, int y) {
+		return find(x, y) >= 0;
+	}
+
+	public static int partner(int endpoint) {
+		return endpoint ^ 1;
+	}
+
+	public static boolean isSideA(int endpoint) {
+		return (endpoint & 1) == 0;
+	}
+
+	public int getCell(int endpoint) {
+		return cells[endpoint];
+	}
+
+	public int getX(int endpoint) {
+		return cells[endpoint] % width;
+	}
+
+	public int getY(int endpoint) {
+		return cells[endpoint] / width;
+	}
+
+	public int getMarks(int endpoint) {
+		return marks[endpoint];
+	}
+
+	public void setMarks(int endpoint, int m) {
+		marks[endpoint] = (byte) m;
+	}
+
+	public int size() {
+		return pairs;
+	}
+
+	public void clear() {
+		Arrays.fill(keys, 0);
+		pairs = 0;
+	}
+
+	public void copyFrom(PortalIndex other) {
+		keys = other.keys.clone();
+		values = other.values.clone();
+		mask = other.mask;
+		cells = other.cells.clone();
+		marks = other.marks.clone();
+		pairs = other.pairs;
+	}
+
+	private void insert(int cell, int endpoint) {
+		int key = cell + 1;
+		int i = hash(key) & mask;
+
+		while (keys[i] != 0 && keys[i] != key) {
+			i = (i + 1) & mask;
+		}
+
+		keys[i] = key;
+		values[i] = endpoint;
+	}
+
+	private void rehash(int capacity) {
+		keys = new int[capacity];
+		values = new int[capacity];
+		mask = capacity - 1;
+
+		for (int e = 0; e < pairs * 2; e++) {
+			insert(cells[e], e);
+		}
+	}
+
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+}
@@ -0,0 +1,24 @@
+package net.ludocrypt.pweeper.game;
+
+import java.util.List;
+
+public record Preset(String name, int width, int height, int mines, int portals) {
+	public static final Preset EASY = new Preset("Easy", 10, 10, 10, 6);
+	public static final Preset MEDIUM = new Preset("Medium", 16, 16, 40, 20);
+	public static final Preset HARD = new Preset("Hard", 24, 24, 99, 50);
+
+	public static final List<Preset> DEFAULTS = List.of(EASY, MEDIUM, HARD);
+
+	public GameState create() {
+		return new GameState(width, height, mines, portals);
+	}
+
+	public GameState create(long seed) {
+		return new GameState(width, height, mines, portals, GamePermissions.FULL, seed);
+	}
+
+	@Override
+	public String toString() {
+		return name + " " + width + "x" + height + ", " + mines + " mines, " + portals + " portals";
+	}
+}
@@ -0,0 +1,236 @@
+package net.ludocrypt.pweeper.game;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Seeks anywhere in a move journal in about the same time however long the journal is. Every
+// so many moves the board is kept as a deflated keyframe, so a seek restores the keyframe at or
+// before the move and replays at most that many moves after it. A seek a little way forward
+// just carries on from where the last one stopped. Everything happens in the one game, so
+// whatever draws it keeps its caches.
+//
+// Mines and portals only move when the first click places them again, so a keyframe holds only
+// the revealed and flagged grids, marks and state. The whole board is snapshotted once before
+// the game starts and once after, and only restored when a seek crosses the first click.
+public class ReplaySeeker {
+	public static final int DEFAULT_INTERVAL = 1024;
+
+	private static final int LIVE = 1, STARTED = 2, WON = 4;
+
+	private final MoveJournal journal;
+	private final int interval;
+	private final GameState game;
+
+	private final List<Keyframe> keyframes = new ArrayList<>();
+	private long keyframeBytes;
+
+	private MoveJournal.Cursor cursor;
+
+	// Journal times count from when it was made, the clock from the first click
+	private long startMicros;
+	private long startNanos;
+
+	public ReplaySeeker(MoveJournal journal, int interval) {
+		this.journal = journal;
+		this.interval = Math.max(interval, 1);
+		this.game = journal.createGame();
+
+		// One pass over the whole journal, keeping a keyframe at every interval
+		cursor = journal.begin();
+		keyframes.add(keyframe(null));
+
+		// A board that was already started brings its own time
+		startNanos = game.getElapsedNanos();
+
+		while (cursor.move() < journal.getMoves()) {
+			if (game.officiallyStarted) {
+				cursor = journal.replay(game, cursor, this.interval - cursor.move() % this.interval);
+			} else {
+				cursor = journal.replay(game, cursor, 1);
+				startMicros = cursor.micros();
+			}
+
+			if (cursor.move() % this.interval == 0) {
+				keyframes.add(keyframe(keyframes.get(keyframes.size() - 1)));
+			}
+		}
+
+		stopClock();
+	}
+
+	public ReplaySeeker(MoveJournal journal) {
+		this(journal, DEFAULT_INTERVAL);
+	}
+
+	// Leaves the game as it was after the given number of moves
+	public void seek(int move) {
+		move = Math.max(0, Math.min(move, journal.getMoves()));
+
+		Keyframe keyframe = keyframes.get(move / interval);
+
+		if (move < cursor.move() || cursor.move() < keyframe.cursor().move()) {
+			restore(keyframe);
+		}
+
+		cursor = journal.replay(game, cursor, move - cursor.move());
+		stopClock();
+	}
+
+	public GameState getGame() {
+		return game;
+	}
+
+	public int getMove() {
+		return cursor.move();
+	}
+
+	public int getMoves() {
+		return journal.getMoves();
+	}
+
+	// The time on the game's clock by the current move
+	public long getMicros() {
+		return game.officiallyStarted ? startNanos / 1000 + Math.max(cursor.micros() - startMicros, 0) : 0;
+	}
+
+	public int getKeyframes() {
+		return keyframes.size();
+	}
+
+	public long getKeyframeBytes() {
+		return keyframeBytes;
+	}
+
+	private void stopClock() {
+		game.stopClock(getMicros() * 1000);
+	}
+
+	private Keyframe keyframe(Keyframe previous) {
+		byte[] board;
+
+		if (previous != null && previous.started() == game.officiallyStarted) {
+			board = previous.board();
+		} else {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+			try {
+				GameSnapshot.write(game, Channels.newChannel(out));
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+
+			board = deflate(out.toByteArray());
+			keyframeBytes += board.length;
+		}
+
+		long[] revealed = game.revealed.words();
+		long[] flagged = game.flagged.words();
+		int ends = game.getPortalIndex().size() * 2;
+
+		ByteBuffer play = ByteBuffer.allocate(1 + (revealed.length + flagged.length) * 8 + ends);
+		play.put((byte) ((game.gameLive ? LIVE : 0) | (game.officiallyStarted ? STARTED : 0) | (game.isWon() ? WON : 0)));
+		play.asLongBuffer().put(revealed).put(flagged);
+		play.position(play.position() + (revealed.length + flagged.length) * 8);
+
+		for (int e = 0; e < ends; e++) {
+			play.put((byte) game.getPortalIndex().getMarks(e));
+		}
+
+		byte[] deflated = deflate(play.array());
+		keyframeBytes += deflated.length;
+
+		return new Keyframe(cursor, game.officiallyStarted, board, deflated, play.capacity());
+	}
+
+	private void restore(Keyframe keyframe) {
+		if (game.officiallyStarted != keyframe.started()) {
+			// The snapshot brings its own permissions, and a viewer may have taken them away
+			int permissions = game.permissions;
+
+			try {
+				GameSnapshot.read(Channels.newChannel(new ByteArrayInputStream(inflate(keyframe.board(), -1))), game);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+
+			game.permissions = permissions;
+		}
+
+		long[] revealed = game.revealed.words();
+		long[] flagged = game.flagged.words();
+		PortalIndex portalIndex = game.getPortalIndex();
+
+		ByteBuffer play = ByteBuffer.wrap(inflate(keyframe.play(), keyframe.playLength()));
+		int state = play.get();
+		play.asLongBuffer().get(revealed).get(flagged);
+		play.position(play.position() + (revealed.length + flagged.length) * 8);
+
+		for (int e = 0; e < portalIndex.size() * 2; e++) {
+			portalIndex.setMarks(e, play.get() & 0xFF);
+		}
+
+		game.restored((state & LIVE) != 0, (state & STARTED) != 0, (state & WON) != 0, 0);
+		cursor = keyframe.cursor();
+	}
+
+	private static byte[] deflate(byte[] data) {
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		deflater.setInput(data);
+		deflater.finish();
+
+		byte[] out = new byte[Math.max(data.length / 4, 64)];
+		int size = 0;
+
+		while (!deflater.finished()) {
+			if (size == out.length) {
+				out = Arrays.copyOf(out, out.length * 2);
+			}
+
+			size += deflater.deflate(out, size, out.length - size);
+		}
+
+		deflater.end();
+
+		return Arrays.copyOf(out, size);
+	}
+
+	// Into exactly the length given, or as much as comes out when it is -1
+	private static byte[] inflate(byte[] data, int length) {
+		Inflater inflater = new Inflater();
+		inflater.setInput(data);
+
+		byte[] out = new byte[length >= 0 ? length : data.length * 4];
+		int size = 0;
+
+		try {
+			while (!inflater.finished()) {
+				if (size == out.length) {
+					out = Arrays.copyOf(out, out.length * 2);
+				}
+
+				size += inflater.inflate(out, size, out.length - size);
+			}
+		} catch (DataFormatException e) {
+			throw new IllegalStateException(e);
+		} finally {
+			inflater.end();
+		}
+
+		return size == out.length ? out : Arrays.copyOf(out, size);
+	}
+
+	// The board is shared by every keyframe on the same side of the first click
+	private static record Keyframe(MoveJournal.Cursor cursor, boolean started, byte[] board, byte[] play, int playLength) {
+	}
+
+}
@@ -0,0 +1,55 @@
+package net.ludocrypt.pweeper.render;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+// The board at one pixel per cell, for views zoomed out too far for the sprites to be made out.
+// Cells are painted by the sprite that would end up on top of them, each in a colour picked
+// from that sprite. Unrevealed and revealed cells share a fill and only differ in their bevel,
+// so unrevealed cells take the bevel's shadow to tell them apart.
+public class BoardOverview {
+	private static final int[] COLORS = new int[Sprite.values().length];
+
+	static {
+		COLORS[Sprite.CELL.ordinal()] = 0x898989;
+		COLORS[Sprite.CELL_REVEALED.ordinal()] = 0xCECECE;
+		COLORS[Sprite.FLAG.ordinal()] = 0xFF0000;
+		COLORS[Sprite.CELL_WRONG.ordinal()] = 0xFF00FF;
+		COLORS[Sprite.PORTAL_A.ordinal()] = 0xDD5435;
+		COLORS[Sprite.PORTAL_B.ordinal()] = 0x53C3EF;
+		COLORS[Sprite.MINE.ordinal()] = 0x161616;
+		COLORS[Sprite.MINE_CORRECT.ordinal()] = 0x348C2C;
+		COLORS[Sprite.MINE_REVEALED.ordinal()] = 0x9F5F5F;
+	}
+
+	public static final Color FRAME_COLOR = new Color(0xCECECE);
+
+	private final int width, height;
+	private final BufferedImage image;
+	private final int[] pixels;
+
+	public BoardOverview(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		this.pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+	}
+
+	public void set(int cell, Sprite sprite) {
+		pixels[cell] = COLORS[sprite.ordinal()];
+	}
+
+	public BufferedImage getImage() {
+		return image;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+}
@@ -0,0 +1,96 @@
+package net.ludocrypt.pweeper.render;
+
+import java.util.Arrays;
+
+public class DirtyCells {
+	private final int width, height;
+	private final long[] marked;
+
+	private int[] queue = new int[64];
+	private int size;
+
+	// Set until the first frame, and whenever so much changed that a full redraw is cheaper
+	private boolean all = true;
+
+	// Told whenever the set goes from clean to dirty, so a frame can be asked for
+	private Runnable listener;
+
+	public DirtyCells(int width, int height) {
+		this.width = width;
+		this.height = height;
+		this.marked = new long[(int) (((long) width * height + 63) >>> 6)];
+	}
+
+	public void mark(int x, int y) {
+		if (x >= 0 && y >= 0 && x < width && y < height) {
+			mark(y * width + x);
+		}
+	}
+
+	public void mark(int cell) {
+		if (all || (marked[cell >>> 6] & (1L << cell)) != 0) {
+			return;
+		}
+
+		if (size == 0 && listener != null) {
+			listener.run();
+		}
+
+		if (size == queue.length) {
+			if (size * 4 >= width * height) {
+				markAll();
+				return;
+			}
+
+			queue = Arrays.copyOf(queue, size * 2);
+		}
+
+		marked[cell >>> 6] |= 1L << cell;
+		queue[size++] = cell;
+	}
+
+	public void markAround(int x, int y) {
+		for (int dy = -1; dy <= 1; dy++) {
+			for (int dx = -1; dx <= 1; dx++) {
+				mark(x + dx, y + dy);
+			}
+		}
+	}
+
+	public void markAll() {
+		boolean wasClean = !all && size == 0;
+
+		clear();
+		all = true;
+
+		if (wasClean && listener != null) {
+			listener.run();
+		}
+	}
+
+	public void setListener(Runnable listener) {
+		this.listener = listener;
+	}
+
+	public boolean isAll() {
+		return all;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int get(int i) {
+		return queue[i];
+	}
+
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			marked[queue[i] >>> 6] = 0L;
+		}
+
+		size = 0;
+		all = false;
+	}
+
+}
@@ -0,0 +1,71 @@
+package net.ludocrypt.pweeper.render;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Runs frames only when asked to, and never more often than the frame rate allows. Requests
+// that arrive while a frame is already on its way are folded into it, so a burst of mouse
+// events costs one frame, and with nothing asking no frame is ever run. Frames run one at a
+// time on the scheduler's own thread.
+public class FrameScheduler {
+	private final Runnable frame;
+	private final long frameNanos;
+
+	private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "Frame Scheduler");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private ScheduledFuture<?> next;
+	private long nextAt;
+	private long lastFrame;
+
+	public FrameScheduler(Runnable frame, int maxFps) {
+		this.frame = frame;
+		this.frameNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(maxFps, 1);
+		this.lastFrame = System.nanoTime() - frameNanos;
+	}
+
+	public void requestFrame() {
+		requestFrame(0);
+	}
+
+	// Asks for a frame no sooner than the delay, pulling an already planned later frame forward
+	public synchronized void requestFrame(long delayMillis) {
+		// Events still arriving while the window closes ask for nothing
+		if (executor.isShutdown()) {
+			return;
+		}
+
+		long at = Math.max(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis), lastFrame + frameNanos);
+
+		if (next != null) {
+			if (nextAt - at <= 0) {
+				return;
+			}
+
+			next.cancel(false);
+		}
+
+		nextAt = at;
+		next = executor.schedule(this::fire, Math.max(at - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+	}
+
+	// Requests made while the frame runs plan the next one rather than waiting on this one
+	private void fire() {
+		synchronized (this) {
+			next = null;
+			lastFrame = System.nanoTime();
+		}
+
+		frame.run();
+	}
+
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+}
@@ -0,0 +1,130 @@
+package net.ludocrypt.pweeper.render;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.util.Arrays;
+
+// Where the time in each frame goes. The render thread adds up the time spent in each pass and
+// the work done while drawing a frame, then publishes the frame whole once it is finished, so
+// anything reading the stats from another thread always sees one complete frame.
+public class RenderStats {
+	private static final int HISTORY = 256;
+
+	private static final Font FONT = new Font(Font.MONOSPACED, Font.PLAIN, 12);
+	private static final Color BACKGROUND = new Color(0, 0, 0, 170);
+
+	public static enum Pass {
+		// Waiting on the EDT and copying the game and viewport the frame is drawn from
+		SNAPSHOT,
+		// Bringing the tiles or the overview up to date with the changed cells and header
+		UPDATE,
+		// Rendering tiles that were not cached yet
+		TILES,
+		// Blitting tiles or the overview to the back buffer, without the tiles rendered on the way
+		COMPOSITE
+	}
+
+	// The frame being drawn, only touched by the render thread
+	private final long[] passNanos = new long[Pass.values().length];
+	private long cells, sprites;
+	private int tilesRendered, tilesDrawn;
+
+	private Frame latest;
+	private final long[] frameNanos = new long[HISTORY];
+	private int frames;
+
+	public void add(Pass pass, long nanos) {
+		passNanos[pass.ordinal()] += nanos;
+	}
+
+	public void count(long cells, long sprites, int tilesRendered, int tilesDrawn) {
+		this.cells += cells;
+		this.sprites += sprites;
+		this.tilesRendered += tilesRendered;
+		this.tilesDrawn += tilesDrawn;
+	}
+
+	// Publishes the frame added up so far and starts on the next
+	public void frameDone(long nanos) {
+		Frame frame = new Frame(passNanos.clone(), nanos, cells, sprites, tilesRendered, tilesDrawn);
+
+		synchronized (this) {
+			latest = frame;
+			frameNanos[frames++ % HISTORY] = nanos;
+		}
+
+		Arrays.fill(passNanos, 0);
+		cells = 0;
+		sprites = 0;
+		tilesRendered = 0;
+		tilesDrawn = 0;
+	}
+
+	// The last frame finished, or null before the first
+	public synchronized Frame getLatest() {
+		return latest;
+	}
+
+	// Over the last few hundred frames, with the fraction given between 0 and 1
+	public synchronized long getFramePercentile(double fraction) {
+		int n = Math.min(frames, HISTORY);
+
+		if (n == 0) {
+			return 0;
+		}
+
+		long[] sorted = Arrays.copyOf(frameNanos, n);
+		Arrays.sort(sorted);
+
+		return sorted[(int) Math.min(Math.round(fraction * (n - 1)), n - 1)];
+	}
+
+	public synchronized int getFrames() {
+		return frames;
+	}
+
+	public void drawOverlay(Graphics2D g, int x, int y) {
+		Frame frame = getLatest();
+
+		if (frame == null) {
+			return;
+		}
+
+		String[] lines = {
+			String.format("frame %6.2f ms   p50 %6.2f  p95 %6.2f  p99 %6.2f", millis(frame.frameNanos()), millis(getFramePercentile(0.5)), millis(getFramePercentile(0.95)), millis(getFramePercentile(0.99))),
+			String.format("snapshot %6.2f  update %6.2f  tiles %6.2f  composite %6.2f", millis(frame.getNanos(Pass.SNAPSHOT)), millis(frame.getNanos(Pass.UPDATE)), millis(frame.getNanos(Pass.TILES)), millis(frame.getNanos(Pass.COMPOSITE))),
+			String.format("cells %d  sprites %d  tiles rendered %d  drawn %d", frame.cells(), frame.sprites(), frame.tilesRendered(), frame.tilesDrawn())
+		};
+
+		g.setFont(FONT);
+		FontMetrics metrics = g.getFontMetrics();
+
+		int width = 0;
+
+		for (String line : lines) {
+			width = Math.max(width, metrics.stringWidth(line));
+		}
+
+		g.setColor(BACKGROUND);
+		g.fillRect(x, y, width + 8, lines.length * metrics.getHeight() + 6);
+
+		g.setColor(Color.WHITE);
+
+		for (int i = 0; i < lines.length; i++) {
+			g.drawString(lines[i], x + 4, y + 3 + i * metrics.getHeight() + metrics.getAscent());
+		}
+	}
+
+	private static double millis(long nanos) {
+		return nanos / 1e6;
+	}
+
+	public static record Frame(long[] passNanos, long frameNanos, long cells, long sprites, int tilesRendered, int tilesDrawn) {
+		public long getNanos(Pass pass) {
+			return passNanos[pass.ordinal()];
+		}
+	}
+
+}
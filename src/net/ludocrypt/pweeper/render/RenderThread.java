@@ -0,0 +1,107 @@
+package net.ludocrypt.pweeper.render;
+
+import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.lang.reflect.InvocationTargetException;
+
+import javax.swing.SwingUtilities;
+
+// Draws a component's frames away from the EDT. Each frame starts with a short snapshot step
+// on the EDT, which copies whatever the frame is drawn from while nothing can change it, then
+// draws that copy into a back buffer on the scheduler's thread. Finished frames are swapped in
+// whole, so painting the component only ever blits a complete frame.
+public class RenderThread {
+	private final Component component;
+	private final Runnable snapshot;
+	private final FramePainter painter;
+	private final FrameScheduler scheduler;
+	private final RenderStats stats = new RenderStats();
+
+	private final Object swapLock = new Object();
+	private BufferedImage front, back;
+
+	private int width, height;
+
+	public RenderThread(Component component, int maxFps, Runnable snapshot, FramePainter painter) {
+		this.component = component;
+		this.snapshot = snapshot;
+		this.painter = painter;
+		this.scheduler = new FrameScheduler(this::render, maxFps);
+	}
+
+	// Frames are asked for through the scheduler, from any thread
+	public FrameScheduler getScheduler() {
+		return scheduler;
+	}
+
+	// Filled in by the render thread, and by the painter for the passes only it can see
+	public RenderStats getStats() {
+		return stats;
+	}
+
+	// For paintComponent, on the EDT
+	public void paint(Graphics g) {
+		synchronized (swapLock) {
+			if (front != null) {
+				g.drawImage(front, 0, 0, null);
+			}
+		}
+	}
+
+	private void render() {
+		long start = System.nanoTime();
+
+		try {
+			SwingUtilities.invokeAndWait(() -> {
+				width = component.getWidth();
+				height = component.getHeight();
+				snapshot.run();
+			});
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		} catch (InvocationTargetException e) {
+			// Thrown from a scheduled task it would vanish into the future, so report it here
+			Thread thread = Thread.currentThread();
+			thread.getUncaughtExceptionHandler().uncaughtException(thread, e.getCause());
+			return;
+		}
+
+		if (width <= 0 || height <= 0) {
+			return;
+		}
+
+		stats.add(RenderStats.Pass.SNAPSHOT, System.nanoTime() - start);
+
+		if (back == null || back.getWidth() != width || back.getHeight() != height) {
+			back = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		}
+
+		Graphics2D g = back.createGraphics();
+		g.setColor(component.getBackground());
+		g.fillRect(0, 0, width, height);
+		painter.paint(g, width, height);
+		g.dispose();
+
+		synchronized (swapLock) {
+			BufferedImage drawn = back;
+			back = front;
+			front = drawn;
+		}
+
+		stats.frameDone(System.nanoTime() - start);
+
+		component.repaint();
+	}
+
+	public void shutdown() {
+		scheduler.shutdown();
+	}
+
+	public static interface FramePainter {
+		void paint(Graphics2D g, int width, int height);
+	}
+
+}
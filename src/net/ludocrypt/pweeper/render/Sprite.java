@@ -0,0 +1,46 @@
+package net.ludocrypt.pweeper.render;
+
+// Every sprite drawn per frame, except the numbers and clock digits which SpriteAtlas indexes directly
+public enum Sprite {
+	CELL("Cell"),
+	CELL_A("CellA"),
+	CELL_B("CellB"),
+	CELL_REVEALED("CellRevealed"),
+	CELL_REVEALED_A("CellRevealedA"),
+	CELL_REVEALED_B("CellRevealedB"),
+	CELL_WRONG("CellWrong"),
+	FLAG("Flag"),
+	MINE("Mine"),
+	MINE_CORRECT("MineCorrect"),
+	MINE_REVEALED("MineRevealed"),
+	PORTAL_A("PortalA"),
+	PORTAL_B("PortalB"),
+	QUESTION("Question"),
+	BOARDER_TB("BoarderTB"),
+	BOARDER_LR("BoarderLR"),
+	BOARDER_TL("BoarderTL"),
+	BOARDER_TR("BoarderTR"),
+	BOARDER_BL("BoarderBL"),
+	BOARDER_BR("BoarderBR"),
+	BOARDER_BLR("BoarderBLR"),
+	BOARDER_TRL("BoarderTRL"),
+	CLOCK_MINUS("ClockM"),
+	CLOCK_NOT("ClockNot"),
+	FACE_1("Face1"),
+	FACE_2("Face2"),
+	FACE_3("Face3"),
+	FACE_4("Face4"),
+	FACE_CLICKED("FaceClicked"),
+	FACE_UNCLICKED("FaceUnclicked");
+
+	private final String fileName;
+
+	Sprite(String fileName) {
+		this.fileName = fileName;
+	}
+
+	public String getFileName() {
+		return fileName;
+	}
+
+}
@@ -0,0 +1,89 @@
+package net.ludocrypt.pweeper.render;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.Map;
+
+public class SpriteAtlas {
+	public static final int MAX_NUMBER = 64;
+
+	private final BufferedImage[] sprites = new BufferedImage[Sprite.values().length];
+	private final BufferedImage[] numbers = new BufferedImage[MAX_NUMBER + 1];
+	private final BufferedImage[] clockDigits = new BufferedImage[10];
+
+	// Looks every sprite up by name once, so drawing never has to
+	public SpriteAtlas(Map<String, BufferedImage> images) {
+		for (Sprite sprite : Sprite.values()) {
+			sprites[sprite.ordinal()] = toCompatible(images.get(sprite.getFileName()));
+		}
+
+		for (int n = 0; n <= MAX_NUMBER; n++) {
+			numbers[n] = toCompatible(images.get(Integer.toString(n)));
+		}
+
+		for (int d = 0; d < 10; d++) {
+			clockDigits[d] = toCompatible(images.get("Clock" + d));
+		}
+	}
+
+	public BufferedImage get(Sprite sprite) {
+		return sprites[sprite.ordinal()];
+	}
+
+	public BufferedImage number(int n) {
+		return numbers[n];
+	}
+
+	public BufferedImage clockDigit(int d) {
+		return clockDigits[d];
+	}
+
+	// Copies the image into the screen's native format so blits to it can be accelerated.
+	// Headless there is no screen, so it goes to the format of the offscreen canvases instead.
+	// Sprites with no transparent pixels become opaque images, which blit as plain copies.
+	public static BufferedImage toCompatible(BufferedImage image) {
+		if (image == null) {
+			return null;
+		}
+
+		int transparency = transparencyOf(image);
+
+		BufferedImage compatible;
+
+		if (GraphicsEnvironment.isHeadless()) {
+			compatible = new BufferedImage(image.getWidth(), image.getHeight(), transparency == Transparency.OPAQUE ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+		} else {
+			compatible = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration().createCompatibleImage(image.getWidth(), image.getHeight(), transparency);
+		}
+
+		Graphics2D g = compatible.createGraphics();
+		g.setComposite(AlphaComposite.Src);
+		g.drawImage(image, 0, 0, null);
+		g.dispose();
+
+		return compatible;
+	}
+
+	// PNGs always decode as translucent, even when every pixel is fully opaque or fully clear
+	private static int transparencyOf(BufferedImage image) {
+		boolean clear = false;
+
+		for (int y = 0; y < image.getHeight(); y++) {
+			for (int x = 0; x < image.getWidth(); x++) {
+				int alpha = image.getRGB(x, y) >>> 24;
+
+				if (alpha != 0 && alpha != 255) {
+					return Transparency.TRANSLUCENT;
+				}
+
+				clear |= alpha == 0;
+			}
+		}
+
+		return clear ? Transparency.BITMASK : Transparency.OPAQUE;
+	}
+
+}
@@ -0,0 +1,228 @@
+package net.ludocrypt.pweeper.render;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayDeque;
+
+// Holds a large canvas as fixed-size tiles that are only rendered once something asks for them.
+// The least recently used tiles are dropped whenever the cache grows past its memory cap.
+// Tiles are kept by index in a list threaded through int arrays, so lookups box nothing.
+public class TileCache {
+	public static final int TILE_SIZE = 256;
+	private static final long TILE_BYTES = (long) TILE_SIZE * TILE_SIZE * 4;
+
+	private final int width, height;
+	private final int columns, rows;
+	private final long maxBytes;
+	private final TileRenderer renderer;
+
+	// Most recently used first, -1 ends the list
+	private final BufferedImage[] tiles;
+	private final int[] newer, older;
+	private int newest = -1, oldest = -1;
+	private int size;
+
+	// Full-size tiles that were dropped, kept to be drawn over instead of allocating new ones.
+	// They count towards the cap along with the cached tiles.
+	private final ArrayDeque<BufferedImage> spare = new ArrayDeque<>();
+	private long bytes;
+
+	// Running totals of the tiles rendered on a miss, for frame stats
+	private int rendered;
+	private long renderNanos;
+
+	public TileCache(int width, int height, long maxBytes, TileRenderer renderer) {
+		this.width = width;
+		this.height = height;
+		this.columns = (width + TILE_SIZE - 1) / TILE_SIZE;
+		this.rows = (height + TILE_SIZE - 1) / TILE_SIZE;
+		this.maxBytes = maxBytes;
+		this.renderer = renderer;
+
+		this.tiles = new BufferedImage[columns * rows];
+		this.newer = new int[columns * rows];
+		this.older = new int[columns * rows];
+	}
+
+	// Renders the tile if it is not cached, evicting others to make room for it
+	public BufferedImage get(int column, int row) {
+		int key = row * columns + column;
+
+		BufferedImage tile = tiles[key];
+
+		if (tile != null) {
+			unlink(key);
+		} else {
+			int x = column * TILE_SIZE;
+			int y = row * TILE_SIZE;
+
+			int w = Math.min(TILE_SIZE, width - x);
+			int h = Math.min(TILE_SIZE, height - y);
+
+			if (w == TILE_SIZE && h == TILE_SIZE) {
+				// Evicting first lets the new tile draw over an old one
+				while (spare.isEmpty() && bytes + TILE_BYTES > maxBytes && oldest >= 0) {
+					evictOldest();
+				}
+
+				if (!spare.isEmpty()) {
+					tile = spare.pop();
+					bytes -= TILE_BYTES;
+				}
+			}
+
+			bytes += (long) w * h * 4;
+			trim();
+
+			if (tile == null) {
+				tile = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+			}
+
+			long start = System.nanoTime();
+
+			Graphics2D g = createGraphics(tile, column, row);
+			renderer.render(g, x, y, tile.getWidth(), tile.getHeight());
+			g.dispose();
+
+			rendered++;
+			renderNanos += System.nanoTime() - start;
+
+			tiles[key] = tile;
+			size++;
+		}
+
+		link(key);
+
+		return tile;
+	}
+
+	// Repaints part of every cached tile the region overlaps, in canvas coordinates
+	public void update(int x, int y, int width, int height, TileRenderer painter) {
+		int c0 = Math.max(Math.floorDiv(x, TILE_SIZE), 0);
+		int r0 = Math.max(Math.floorDiv(y, TILE_SIZE), 0);
+		int c1 = Math.min(Math.floorDiv(x + width - 1, TILE_SIZE), columns - 1);
+		int r1 = Math.min(Math.floorDiv(y + height - 1, TILE_SIZE), rows - 1);
+
+		for (int row = r0; row <= r1; row++) {
+			for (int column = c0; column <= c1; column++) {
+				BufferedImage tile = tiles[row * columns + column];
+
+				if (tile != null) {
+					Graphics2D g = createGraphics(tile, column, row);
+					g.clipRect(x, y, width, height);
+					painter.render(g, x, y, width, height);
+					g.dispose();
+				}
+			}
+		}
+	}
+
+	// The tiles are kept as spares, so the cache refills without allocating
+	public void clear() {
+		while (oldest >= 0) {
+			evictOldest();
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	// Cached and spare tiles together
+	public long getBytes() {
+		return bytes;
+	}
+
+	public int getRendered() {
+		return rendered;
+	}
+
+	public long getRenderNanos() {
+		return renderNanos;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getColumns() {
+		return columns;
+	}
+
+	public int getRows() {
+		return rows;
+	}
+
+	// Tile graphics work in canvas coordinates, so renderers never need to know about tiles
+	private Graphics2D createGraphics(BufferedImage tile, int column, int row) {
+		Graphics2D g = tile.createGraphics();
+		g.translate(-column * TILE_SIZE, -row * TILE_SIZE);
+		return g;
+	}
+
+	// Drops spares before any cached tile
+	private void trim() {
+		while (bytes > maxBytes) {
+			if (!spare.isEmpty()) {
+				spare.pop();
+				bytes -= TILE_BYTES;
+			} else if (oldest >= 0) {
+				evictOldest();
+			} else {
+				break;
+			}
+		}
+	}
+
+	// Full-size tiles become spares and stay counted, the rest are let go
+	private void evictOldest() {
+		int key = oldest;
+		BufferedImage tile = tiles[key];
+
+		unlink(key);
+		tiles[key] = null;
+		size--;
+
+		if (tile.getWidth() == TILE_SIZE && tile.getHeight() == TILE_SIZE) {
+			spare.push(tile);
+		} else {
+			bytes -= (long) tile.getWidth() * tile.getHeight() * 4;
+		}
+	}
+
+	private void link(int key) {
+		newer[key] = -1;
+		older[key] = newest;
+
+		if (newest >= 0) {
+			newer[newest] = key;
+		} else {
+			oldest = key;
+		}
+
+		newest = key;
+	}
+
+	private void unlink(int key) {
+		if (newer[key] >= 0) {
+			older[newer[key]] = older[key];
+		} else {
+			newest = older[key];
+		}
+
+		if (older[key] >= 0) {
+			newer[older[key]] = newer[key];
+		} else {
+			oldest = newer[key];
+		}
+	}
+
+	public static interface TileRenderer {
+		void render(Graphics2D g, int x, int y, int width, int height);
+	}
+
+}
@@ -1,8 +1,8 @@
 package net.ludocrypt.pweeper.render;
 
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.geom.AffineTransform;
-import java.awt.image.BufferedImage;
 
 import javax.swing.JPanel;
 
@@ -18,6 +18,16 @@ public class Viewport {
 
 	JPanel drawPanel;
 
+	// transMat * mat and its inverse, rebuilt only after setMouse, pushMouse or zoom change them
+	private final Matrix4f composed = new Matrix4f();
+	private final Matrix4f inverse = new Matrix4f();
+	private final Vector3f scale = new Vector3f();
+	private final Vector3f translation = new Vector3f();
+	private boolean stale = true;
+
+	// Set on snapshots, which keep the panel size they were taken at
+	private int panelWidth = -1, panelHeight = -1;
+
 	public Viewport(JPanel drawPanel) {
 		mat = new Matrix4f();
 		transMat = new Matrix4f();
@@ -31,6 +41,24 @@ public class Viewport {
 		this.locked = locked;
 	}
 
+	// A locked copy that keeps the current transform and panel size, for drawing on another thread
+	public Viewport snapshot() {
+		Viewport copy = new Viewport(drawPanel, true);
+		copy.mat.set(mat);
+		copy.transMat.set(transMat);
+		copy.panelWidth = getPanelWidth();
+		copy.panelHeight = getPanelHeight();
+		return copy;
+	}
+
+	private int getPanelWidth() {
+		return panelWidth >= 0 ? panelWidth : drawPanel.getWidth();
+	}
+
+	private int getPanelHeight() {
+		return panelHeight >= 0 ? panelHeight : drawPanel.getHeight();
+	}
+
 	public void lock() {
 		locked = true;
 	}
@@ -41,17 +69,14 @@ public class Viewport {
 
 	public void setMouse(double x, double y) {
 		if (!locked) {
-			transMat = new Matrix4f();
-			transMat.translate((float) x, (float) y, 0);
+			transMat.translation((float) x, (float) y, 0);
+			stale = true;
 		}
 	}
 
 	public void pushMouse() {
-		Matrix4f mat = new Matrix4f();
-		mat.mul(this.transMat);
-		mat.mul(this.mat);
-
-		this.mat = mat;
+		transMat.mul(mat, mat);
+		stale = true;
 
 		setMouse(0, 0);
 	}
@@ -78,36 +103,97 @@ public class Viewport {
 
 			mat.m30((float) x - worldX * mat.m00());
 			mat.m31((float) y - worldY * mat.m11());
+
+			stale = true;
 		}
 	}
 
-	public Matrix4f composeMat(boolean inv) {
-		Matrix4f projMat = new Matrix4f();
-		projMat.mul(transMat);
-		projMat.mul(mat);
-
-		if (inv) {
-			projMat.invert();
+	private void update() {
+		if (stale) {
+			transMat.mul(mat, composed);
+			composed.invert(inverse);
+			composed.getScale(scale);
+			composed.getTranslation(translation);
+			stale = false;
 		}
+	}
 
-		return projMat;
+	// Returns a copy, so callers are free to change it
+	public Matrix4f composeMat(boolean inv) {
+		update();
+		return new Matrix4f(inv ? inverse : composed);
 	}
 
 	public Matrix4f composeMat() {
 		return composeMat(false);
 	}
 
-	public void drawTransformedImage(Graphics2D g, BufferedImage image) {
-		Matrix4f mat = composeMat();
+	public float getScaleX() {
+		update();
+		return scale.x;
+	}
 
-		Vector3f scale = new Vector3f();
-		scale = mat.getScale(scale);
+	public float getScaleY() {
+		update();
+		return scale.y;
+	}
 
-		Vector3f translation = new Vector3f();
-		translation = mat.getTranslation(translation);
+	// Translation as a fraction of the panel, which is how the mouse pans it
+	public float getTranslationX() {
+		update();
+		return translation.x;
+	}
+
+	public float getTranslationY() {
+		update();
+		return translation.y;
+	}
+
+	// How many screen pixels one canvas pixel covers
+	public double getScale() {
+		update();
+		return composed.m00();
+	}
+
+	// Draws a frame of the given size scaled and panned onto the panel, with the board drawn from
+	// the overview's one pixel per cell, stretched over the 20 pixels a cell takes up
+	public void drawTransformedOverview(Graphics2D g, BoardOverview overview, int boardX, int boardY, int frameWidth, int frameHeight) {
+		update();
+
+		double tx = translation.x * getPanelWidth();
+		double ty = translation.y * getPanelHeight();
+
+		AffineTransform at = new AffineTransform(scale.x, 0, 0, scale.y, tx, ty);
+
+		g.setColor(BoardOverview.FRAME_COLOR);
+		g.fill(at.createTransformedShape(new Rectangle(frameWidth, frameHeight)));
+
+		at.translate(boardX, boardY);
+		at.scale(20, 20);
+		g.drawImage(overview.getImage(), at, null);
+	}
+
+	// Same placement as drawTransformedOverview, but from tiles, and only the tiles that land on
+	// the panel are drawn. Returns how many were.
+	public int drawTransformedTiles(Graphics2D g, TileCache tiles) {
+		update();
+
+		double tx = translation.x * getPanelWidth();
+		double ty = translation.y * getPanelHeight();
+
+		int c0 = Math.max((int) Math.floor(-tx / scale.x / TileCache.TILE_SIZE), 0);
+		int r0 = Math.max((int) Math.floor(-ty / scale.y / TileCache.TILE_SIZE), 0);
+		int c1 = Math.min((int) Math.floor((getPanelWidth() - tx) / scale.x / TileCache.TILE_SIZE), tiles.getColumns() - 1);
+		int r1 = Math.min((int) Math.floor((getPanelHeight() - ty) / scale.y / TileCache.TILE_SIZE), tiles.getRows() - 1);
+
+		for (int row = r0; row <= r1; row++) {
+			for (int column = c0; column <= c1; column++) {
+				AffineTransform at = new AffineTransform(scale.x, 0, 0, scale.y, tx + column * TileCache.TILE_SIZE * scale.x, ty + row * TileCache.TILE_SIZE * scale.y);
+				g.drawImage(tiles.get(column, row), at, null);
+			}
+		}
 
-		AffineTransform at = new AffineTransform(scale.x, 0, 0, scale.y, translation.x * drawPanel.getWidth(), translation.y * drawPanel.getHeight());
-		g.drawImage(image, at, null);
+		return Math.max(c1 - c0 + 1, 0) * Math.max(r1 - r0 + 1, 0);
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,15 @@
+package net.ludocrypt.pweeper.sim;
+
+import net.ludocrypt.pweeper.game.GameState;
+
+public interface Bot {
+	// The next click to make on a live game, or null to give up
+	Click next(GameState game);
+
+	default String name() {
+		return getClass().getSimpleName();
+	}
+
+	public static record Click(int x, int y, boolean flag) {
+	}
+}
@@ -0,0 +1,45 @@
+package net.ludocrypt.pweeper.sim;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import net.ludocrypt.pweeper.game.GameState;
+
+// Opens the middle, then hidden cells at random. Flags only once every hidden cell left
+// must be a mine.
+public class RandomBot implements Bot {
+
+	@Override
+	public Click next(GameState game) {
+		if (!game.officiallyStarted) {
+			return new Click(game.width / 2, game.height / 2, false);
+		}
+
+		int hidden = 0;
+
+		for (int x = 0; x < game.width; x++) {
+			for (int y = 0; y < game.height; y++) {
+				if (!game.isRevealed(x, y) && !game.isFlagged(x, y)) {
+					hidden++;
+				}
+			}
+		}
+
+		if (hidden == 0) {
+			return null;
+		}
+
+		boolean flag = hidden == game.mines - game.getTotalFlags();
+		int pick = flag ? 0 : ThreadLocalRandom.current().nextInt(hidden);
+
+		for (int x = 0; x < game.width; x++) {
+			for (int y = 0; y < game.height; y++) {
+				if (!game.isRevealed(x, y) && !game.isFlagged(x, y) && pick-- == 0) {
+					return new Click(x, y, flag);
+				}
+			}
+		}
+
+		return null;
+	}
+
+}
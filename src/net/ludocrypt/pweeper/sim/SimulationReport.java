@@ -0,0 +1,60 @@
+package net.ludocrypt.pweeper.sim;
+
+import java.util.Arrays;
+
+import net.ludocrypt.pweeper.game.Preset;
+
+public class SimulationReport {
+	public final Preset preset;
+	public final String bot;
+	public final int threads;
+	public final long elapsed;
+	public final int wins;
+	public final long clicks;
+
+	// Time each game took from first click to the end, in nanoseconds, sorted
+	private final long[] times;
+
+	public SimulationReport(Preset preset, String bot, int threads, long elapsed, int wins, long clicks, long[] times) {
+		this.preset = preset;
+		this.bot = bot;
+		this.threads = threads;
+		this.elapsed = elapsed;
+		this.wins = wins;
+		this.clicks = clicks;
+		this.times = times;
+
+		Arrays.sort(this.times);
+	}
+
+	public int getGames() {
+		return times.length;
+	}
+
+	public double getGamesPerSecond() {
+		return getGames() / (elapsed / 1e9);
+	}
+
+	public double getWinRate() {
+		return getGames() == 0 ? 0 : (double) wins / getGames();
+	}
+
+	public double getAverageClicks() {
+		return getGames() == 0 ? 0 : (double) clicks / getGames();
+	}
+
+	// Time to finish at the given fraction (0 to 1) of games, in nanoseconds
+	public long getTimePercentile(double fraction) {
+		if (times.length == 0) {
+			return 0;
+		}
+
+		return times[(int) Math.min(times.length - 1, Math.floor(fraction * times.length))];
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s, %s on %d threads: %d games, %.0f games/s, %.1f%% won, %.1f clicks, time to finish p50 %.3f ms, p90 %.3f ms, p99 %.3f ms, max %.3f ms", preset, bot, threads, getGames(), getGamesPerSecond(), getWinRate() * 100, getAverageClicks(), getTimePercentile(0.5) / 1e6, getTimePercentile(0.9) / 1e6, getTimePercentile(0.99) / 1e6, getTimePercentile(1) / 1e6);
+	}
+
+}
@@ -0,0 +1,144 @@
+package net.ludocrypt.pweeper.sim;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import net.ludocrypt.pweeper.game.GameState;
+import net.ludocrypt.pweeper.game.Preset;
+import net.ludocrypt.pweeper.sim.Bot.Click;
+
+// Plays whole games without any Swing state, spread over a fixed pool of threads. Every
+// game gets a fresh bot from the supplier. Each thread draws its boards' seeds from its own
+// stream split off the run's seed, so a run with the same seed and thread count deals the
+// same boards.
+public class Simulator {
+	private final Preset preset;
+	private final Supplier<Bot> bots;
+	private final int threads;
+	private final long seed;
+
+	public Simulator(Preset preset, Supplier<Bot> bots) {
+		this(preset, bots, Runtime.getRuntime().availableProcessors());
+	}
+
+	public Simulator(Preset preset, Supplier<Bot> bots, int threads) {
+		this(preset, bots, threads, ThreadLocalRandom.current().nextLong());
+	}
+
+	public Simulator(Preset preset, Supplier<Bot> bots, int threads, long seed) {
+		this.preset = preset;
+		this.bots = bots;
+		this.threads = threads;
+		this.seed = seed;
+	}
+
+	public SimulationReport run(int games) {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+		try {
+			long start = System.nanoTime();
+
+			List<Future<Results>> futures = new ArrayList<Future<Results>>();
+
+			SplittableRandom seeds = new SplittableRandom(seed);
+
+			for (int t = 0; t < threads; t++) {
+				int share = games / threads + (t < games % threads ? 1 : 0);
+				SplittableRandom stream = seeds.split();
+				futures.add(executor.submit(() -> play(share, stream)));
+			}
+
+			Results total = new Results(games);
+
+			for (Future<Results> future : futures) {
+				total.add(future.get());
+			}
+
+			return new SimulationReport(preset, bots.get().name(), threads, System.nanoTime() - start, total.wins, total.clicks, Arrays.copyOf(total.times, total.games));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	private Results play(int games, SplittableRandom seeds) {
+		Results results = new Results(games);
+
+		for (int i = 0; i < games; i++) {
+			GameState game = preset.create(seeds.nextLong());
+			Bot bot = bots.get();
+
+			long start = System.nanoTime();
+			int clicks = play(game, bot);
+
+			results.record(game.isWon(), clicks, System.nanoTime() - start);
+		}
+
+		return results;
+	}
+
+	// Plays one game to the end, or until the bot gives up or clicks far more often than
+	// the board could need
+	public static int play(GameState game, Bot bot) {
+		int limit = game.width * game.height * 2;
+		int clicks = 0;
+
+		while (game.gameLive && clicks < limit) {
+			Click click = bot.next(game);
+
+			if (click == null) {
+				break;
+			}
+
+			if (click.flag()) {
+				game.toggleFlag(click.x(), click.y());
+			} else {
+				game.reveal(click.x(), click.y());
+			}
+
+			clicks++;
+		}
+
+		return clicks;
+	}
+
+	private static class Results {
+		int games, wins;
+		long clicks;
+		long[] times;
+
+		Results(int capacity) {
+			this.times = new long[capacity];
+		}
+
+		void record(boolean won, int clicks, long time) {
+			if (won) {
+				this.wins++;
+			}
+
+			this.clicks += clicks;
+			this.times[games++] = time;
+		}
+
+		void add(Results other) {
+			System.arraycopy(other.times, 0, times, games, other.games);
+
+			this.games += other.games;
+			this.wins += other.wins;
+			this.clicks += other.clicks;
+		}
+	}
+
+}
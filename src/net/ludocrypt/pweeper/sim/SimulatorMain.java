@@ -0,0 +1,39 @@
+package net.ludocrypt.pweeper.sim;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import net.ludocrypt.pweeper.game.Preset;
+
+// Runs every default preset with every bot and prints a report line for each. With solver
+// threads, every SolverBot shares one fork/join pool of that size for its solves.
+// Arguments: [games per run] [threads] [seed] [solver threads]
+public class SimulatorMain {
+
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+
+		int games = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+		long seed = args.length > 2 ? Long.parseLong(args[2]) : ThreadLocalRandom.current().nextLong();
+		int solverThreads = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+		ForkJoinPool pool = solverThreads > 0 ? new ForkJoinPool(solverThreads) : null;
+
+		System.out.println("seed " + seed);
+
+		List<Supplier<Bot>> bots = List.of(RandomBot::new, () -> new SolverBot(pool));
+
+		for (Preset preset : Preset.DEFAULTS) {
+			for (Supplier<Bot> bot : bots) {
+				System.out.println(new Simulator(preset, bot, threads, seed).run(games));
+			}
+		}
+
+		if (pool != null) {
+			pool.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,73 @@
+package net.ludocrypt.pweeper.sim;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ForkJoinPool;
+
+import net.ludocrypt.pweeper.game.GameSolver;
+import net.ludocrypt.pweeper.game.GameState;
+
+// Plays every move GameSolver is certain of, and otherwise opens the hidden cell least
+// likely to be a mine. Like the solver it knows where the portals are. Given a pool, the
+// solver runs in its fork/join mode and plays exactly the same moves.
+public class SolverBot implements Bot {
+	private final ForkJoinPool pool;
+	private GameSolver solver;
+	private final Deque<Click> certain = new ArrayDeque<Click>();
+
+	public SolverBot() {
+		this(null);
+	}
+
+	public SolverBot(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	@Override
+	public Click next(GameState game) {
+		if (!game.officiallyStarted) {
+			return new Click(game.width / 2, game.height / 2, false);
+		}
+
+		while (!certain.isEmpty()) {
+			Click click = certain.poll();
+
+			if (!game.isRevealed(click.x(), click.y()) && game.isFlagged(click.x(), click.y()) != click.flag()) {
+				return click;
+			}
+		}
+
+		if (solver == null || solver.gameState != game) {
+			solver = new GameSolver(game, pool);
+		}
+
+		solver.solve();
+
+		Click best = null;
+		double bestProbability = 2;
+
+		for (int x = 0; x < game.width; x++) {
+			for (int y = 0; y < game.height; y++) {
+				if (game.isRevealed(x, y)) {
+					continue;
+				}
+
+				double p = solver.getProbability(x, y);
+
+				if (game.isPortal(x, y) || p == 0) {
+					certain.add(new Click(x, y, false));
+				} else if (p == 1) {
+					if (!game.isFlagged(x, y)) {
+						certain.add(new Click(x, y, true));
+					}
+				} else if (!game.isFlagged(x, y) && p < bestProbability) {
+					best = new Click(x, y, false);
+					bestProbability = p;
+				}
+			}
+		}
+
+		return certain.isEmpty() ? best : certain.poll();
+	}
+
+}
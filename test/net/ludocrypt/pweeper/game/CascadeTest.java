@@ -0,0 +1,84 @@
+package net.ludocrypt.pweeper.game;
+
+import java.util.Random;
+
+// Checks that reveal opens exactly the cells the old recursive reveal did, on seeded boards with
+// portals and flags, from the first click on. Failures throw AssertionError.
+public class CascadeTest {
+
+	public static void main(String[] args) {
+		Random random = new Random(1);
+
+		for (int i = 0; i < 500; i++) {
+			int width = 4 + random.nextInt(50);
+			int height = 4 + random.nextInt(50);
+			int mines = random.nextInt(GameState.getMaxMines(width, height) / 3 + 1);
+			int portals = random.nextInt(width * height / 16 + 1);
+			GameState game = new GameState(width, height, mines, portals, GamePermissions.FULL, random.nextLong());
+
+			// The first click opens a region on a board it has just dealt
+			int x = random.nextInt(width);
+			int y = random.nextInt(height);
+			boolean[] expected = new boolean[width * height];
+			int opened = game.reveal(x, y);
+			check(opened == reveal(game, expected, x, y), "board " + i + " opened a different count first");
+			compare(game, expected, "board " + i + " first click");
+
+			for (int k = 0; k < 40 && game.gameLive; k++) {
+				x = random.nextInt(width);
+				y = random.nextInt(height);
+
+				if (random.nextInt(4) == 0) {
+					game.toggleFlag(x, y);
+				} else if (!game.isMine(x, y)) {
+					opened = game.reveal(x, y);
+					check(opened == reveal(game, expected, x, y), "board " + i + " move " + k + " opened a different count");
+					compare(game, expected, "board " + i + " move " + k);
+				}
+			}
+		}
+
+		System.out.println("CascadeTest passed");
+	}
+
+	// The recursive reveal from before the explicit stack, over the game's mines, flags and counts
+	private static int reveal(GameState game, boolean[] revealed, int x, int y) {
+		if (!game.isInBounds(x, y) || revealed[y * game.width + x] || game.isFlagged(x, y)) {
+			return 0;
+		}
+
+		revealed[y * game.width + x] = true;
+
+		int i = 1;
+
+		if (!game.isMine(x, y) && game.getSurrounding(x, y) == 0) {
+			for (int dx = -1; dx <= 1; dx++) {
+				for (int dy = -1; dy <= 1; dy++) {
+					i += reveal(game, revealed, x + dx, y + dy);
+				}
+			}
+		}
+
+		return i;
+	}
+
+	private static void compare(GameState game, boolean[] expected, String where) {
+		int total = 0;
+
+		for (int y = 0; y < game.height; y++) {
+			for (int x = 0; x < game.width; x++) {
+				check(game.isRevealed(x, y) == expected[y * game.width + x], where + " differs at " + x + "," + y);
+				total += expected[y * game.width + x] ? 1 : 0;
+			}
+		}
+
+		check(game.getTotalRevealed() == total, where + " counted " + game.getTotalRevealed() + " revealed, not " + total);
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+
+}
@@ -0,0 +1,117 @@
+package net.ludocrypt.pweeper.game;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+import java.util.Random;
+
+// Saves random boards part way through a game and checks they load back exactly, and play on the
+// same afterwards. Failures throw AssertionError.
+public class GameSnapshotTest {
+
+	public static void main(String[] args) throws IOException {
+		Random random = new Random(1);
+
+		for (int i = 0; i < 400; i++) {
+			int width = 4 + random.nextInt(40);
+			int height = 4 + random.nextInt(40);
+			GameState game = new GameState(width, height, width * height / 6, width * height / 12, GamePermissions.FULL, random.nextLong());
+
+			play(game, random, random.nextInt(200));
+
+			byte[] saved = write(game);
+			GameState loaded = read(saved);
+			check(describe(game).equals(describe(loaded)), "board " + i + " changed on the way through");
+			check(Arrays.equals(withoutTime(saved), withoutTime(write(loaded))), "board " + i + " saves differently once loaded");
+
+			// The seed and everything else carry on the same
+			long seed = random.nextLong();
+			play(game, new Random(seed), 50);
+			play(loaded, new Random(seed), 50);
+			check(describe(game).equals(describe(loaded)), "board " + i + " played on differently");
+		}
+
+		tailBits();
+
+		System.out.println("GameSnapshotTest passed");
+	}
+
+	// Bits set past the last cell in a file do not reach the counts
+	private static void tailBits() throws IOException {
+		GameState game = new GameState(5, 5, 3, 0, GamePermissions.FULL, 1);
+		byte[] saved = write(game);
+
+		ByteBuffer buffer = ByteBuffer.wrap(saved);
+		buffer.putLong(49 + 8, buffer.getLong(49 + 8) | -1L << 25);
+		buffer.putLong(49 + 16, buffer.getLong(49 + 16) | -1L << 25);
+
+		GameState loaded = read(saved);
+		check(loaded.getTotalRevealed() == 0 && loaded.getTotalFlags() == 0, "tail bits were counted");
+	}
+
+	private static void play(GameState game, Random random, int moves) {
+		for (int k = 0; k < moves; k++) {
+			int x = random.nextInt(game.width);
+			int y = random.nextInt(game.height);
+
+			switch (random.nextInt(4)) {
+				case 0 -> {
+					if (!game.isMine(x, y) || random.nextInt(30) == 0) {
+						game.reveal(x, y);
+					}
+				}
+				case 1 -> game.toggleFlag(x, y);
+				case 2 -> game.increaseMark(x, y);
+				default -> game.autoReveal(x, y);
+			}
+		}
+	}
+
+	private static String describe(GameState game) {
+		StringBuilder builder = new StringBuilder();
+		builder.append(game.width).append('x').append(game.height).append(' ').append(game.mines).append(' ').append(game.portals).append(' ').append(game.permissions).append(' ').append(game.getSeed());
+		builder.append(' ').append(game.gameLive).append(game.officiallyStarted).append(game.isWon());
+		builder.append(' ').append(game.getTotalFlags()).append(' ').append(game.getTotalRevealed()).append(' ').append(game.getCorrectFlags()).append('|');
+
+		for (int y = 0; y < game.height; y++) {
+			for (int x = 0; x < game.width; x++) {
+				builder.append(game.isMine(x, y) ? 'M' : '.').append(game.isRevealed(x, y) ? 'R' : '.').append(game.isFlagged(x, y) ? 'F' : '.').append(game.getSurrounding(x, y));
+
+				GameState.Int2 through = game.thru(x, y);
+
+				if (through != null) {
+					builder.append(through.x()).append(',').append(through.y()).append('m').append(game.getPortalMarks(x, y));
+				}
+			}
+		}
+
+		return builder.toString();
+	}
+
+	private static byte[] write(GameState game) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GameSnapshot.write(game, Channels.newChannel(out));
+		return out.toByteArray();
+	}
+
+	private static GameState read(byte[] saved) throws IOException {
+		return GameSnapshot.read(Channels.newChannel(new ByteArrayInputStream(saved)));
+	}
+
+	// The elapsed time keeps running between a save and the next
+	private static byte[] withoutTime(byte[] saved) {
+		byte[] copy = saved.clone();
+		ByteBuffer.wrap(copy).putLong(37, 0);
+		return copy;
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+
+}
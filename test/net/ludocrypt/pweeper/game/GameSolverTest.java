@@ -0,0 +1,182 @@
+package net.ludocrypt.pweeper.game;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Checks the solver against every way the mines could lie, on small random boards with
+// portals, part way through a game. The solver's sweeps, and its splits on a step when a
+// sweep is cut short, must both give the exact probabilities. Failures throw AssertionError.
+public class GameSolverTest {
+
+	public static void main(String[] args) {
+		Random random = new Random(1);
+		int checked = 0;
+
+		while (checked < 300) {
+			int width = 4 + random.nextInt(4);
+			int height = 4 + random.nextInt(4);
+			int mines = 1 + random.nextInt(width * height / 5);
+			int portals = random.nextInt(width * height / 10 + 1);
+			GameState game = new GameState(width, height, mines, portals, GamePermissions.FULL, random.nextLong());
+
+			game.reveal(random.nextInt(width), random.nextInt(height));
+
+			for (int k = random.nextInt(4); k > 0 && game.gameLive; k--) {
+				int x = random.nextInt(width);
+				int y = random.nextInt(height);
+
+				if (!game.isMine(x, y)) {
+					game.reveal(x, y);
+				}
+			}
+
+			double[] expected = enumerate(game);
+
+			if (!game.gameLive || expected == null) {
+				continue;
+			}
+
+			// Whole sweeps, sweeps cut short at once so every component is split, and a mix
+			for (long sweepWork : new long[] { FrontierComponent.MAX_WORK, 0, 64 }) {
+				GameSolver solver = new GameSolver(game);
+				solver.sweepWork = sweepWork;
+				solver.solve();
+
+				check(solver.isExact(), "board " + checked + " was not solved exactly");
+
+				for (int y = 0; y < height; y++) {
+					for (int x = 0; x < width; x++) {
+						if (!game.isRevealed(x, y) && !game.isPortal(x, y)) {
+							double p = expected[y * width + x];
+							check(Math.abs(solver.getProbability(x, y) - p) <= 1e-12, "board " + checked + " gave " + solver.getProbability(x, y) + " at " + x + "," + y + " for " + p + " with sweeps of " + sweepWork);
+						}
+					}
+				}
+			}
+
+			checked++;
+		}
+
+		System.out.println("GameSolverTest passed");
+	}
+
+	// The chance of a mine on each unknown cell over every layout of the board's mines that
+	// gives the revealed numbers, or null if there are too many layouts to try
+	private static double[] enumerate(GameState game) {
+		int width = game.width;
+		int height = game.height;
+
+		List<Integer> unknown = new ArrayList<Integer>();
+		int[] indexOf = new int[width * height];
+
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				indexOf[y * width + x] = -1;
+
+				if (!game.isRevealed(x, y) && !game.isPortal(x, y)) {
+					indexOf[y * width + x] = unknown.size();
+					unknown.add(y * width + x);
+				}
+			}
+		}
+
+		if (unknown.size() > 18) {
+			return null;
+		}
+
+		// Each revealed number as the unknown cells it counts, once per time it counts them,
+		// following a portal next to it to the cells around the other end
+		List<int[]> terms = new ArrayList<int[]>();
+		List<Integer> values = new ArrayList<Integer>();
+
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				if (!game.isRevealed(x, y) || game.isPortal(x, y)) {
+					continue;
+				}
+
+				List<Integer> counted = new ArrayList<Integer>();
+
+				for (int dx = -1; dx <= 1; dx++) {
+					for (int dy = -1; dy <= 1; dy++) {
+						if ((dx != 0 || dy != 0) && game.isInBounds(x + dx, y + dy)) {
+							if (game.isPortal(x + dx, y + dy)) {
+								GameState.Int2 through = game.thru(x + dx, y + dy);
+								around(game, through.x(), through.y(), indexOf, counted);
+							} else if (indexOf[(y + dy) * width + x + dx] >= 0) {
+								counted.add(indexOf[(y + dy) * width + x + dx]);
+							}
+						}
+					}
+				}
+
+				terms.add(counted.stream().mapToInt(Integer::intValue).toArray());
+				values.add(game.getSurrounding(x, y));
+			}
+		}
+
+		int n = unknown.size();
+		long total = 0;
+		long[] hits = new long[n];
+		boolean[] mine = new boolean[n];
+
+		for (int mask = 0; mask < 1 << n; mask++) {
+			if (Integer.bitCount(mask) != game.mines) {
+				continue;
+			}
+
+			for (int i = 0; i < n; i++) {
+				mine[i] = (mask & 1 << i) != 0;
+			}
+
+			boolean fits = true;
+
+			for (int c = 0; c < terms.size() && fits; c++) {
+				int count = 0;
+
+				for (int i : terms.get(c)) {
+					count += mine[i] ? 1 : 0;
+				}
+
+				fits = count == values.get(c);
+			}
+
+			if (fits) {
+				total++;
+
+				for (int i = 0; i < n; i++) {
+					hits[i] += mine[i] ? 1 : 0;
+				}
+			}
+		}
+
+		// The real layout is always one of them
+		check(total > 0, "no layout gives the revealed numbers");
+
+		double[] probabilities = new double[width * height];
+
+		for (int i = 0; i < n; i++) {
+			probabilities[unknown.get(i)] = (double) hits[i] / total;
+		}
+
+		return probabilities;
+	}
+
+	private static void around(GameState game, int x, int y, int[] indexOf, List<Integer> counted) {
+		for (int dx = -1; dx <= 1; dx++) {
+			for (int dy = -1; dy <= 1; dy++) {
+				if ((dx != 0 || dy != 0) && game.isInBounds(x + dx, y + dy) && indexOf[(y + dy) * game.width + x + dx] >= 0) {
+					counted.add(indexOf[(y + dy) * game.width + x + dx]);
+				}
+			}
+		}
+	}
+
+	private static void check(boolean condition, String message) {
+		if (!condition) {
+			throw new AssertionError(message);
+		}
+	}
+
+}